@@ -31,9 +31,19 @@ public class RawSqlService {
     }
 
     private void userActions(String actions) throws SQLException {
+        StatementKind kind = SqlLexer.classify(actions);
+        if (kind == StatementKind.EMPTY) {
+            System.out.println("Nothing to execute.");
+            return;
+        }
+
         try (Statement stmt = con.createStatement()) {
-            boolean hasResultSet = stmt.execute(actions);
-            if (hasResultSet) {
+            if (kind.returnsRows()) {
+                try (ResultSet rs = stmt.executeQuery(actions)) {
+                    printResultSet(rs);
+                }
+            } else if (stmt.execute(actions)) {
+                // Statements the lexer does not know (CALL etc.) may still return rows
                 try (ResultSet rs = stmt.getResultSet()) {
                     printResultSet(rs);
                 }
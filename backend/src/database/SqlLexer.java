@@ -0,0 +1,208 @@
+package database;
+
+// Copy of src/main/java/database/SqlLexer.java, which is the one to edit. The
+// CLI is compiled on its own, without the Spring tree, so it keeps a copy.
+//
+// Classifies a SQL statement by its leading keyword(s) in a single pass over
+// the text, without copying or upper-casing it. Leading whitespace, comments
+// (-- , # and /* */) and opening parentheses are skipped; WITH is followed
+// past its common table expressions to the statement they feed.
+public final class SqlLexer {
+
+    private static final String[] SESSION_KEYWORDS = {
+            "USE", "SET", "BEGIN", "START", "XA", "LOCK", "FLUSH", "PREPARE", "HANDLER", "CALL"
+    };
+
+    private SqlLexer() {
+    }
+
+    public static StatementKind classify(CharSequence sql) {
+        if (sql == null) {
+            return StatementKind.EMPTY;
+        }
+        int n = sql.length();
+        int i = skipTrivia(sql, 0, n, true);
+        if (i >= n) {
+            return StatementKind.EMPTY;
+        }
+
+        if (keywordAt(sql, i, n, "SELECT") || keywordAt(sql, i, n, "TABLE") || keywordAt(sql, i, n, "VALUES")) {
+            return StatementKind.SELECT;
+        }
+        if (keywordAt(sql, i, n, "WITH")) {
+            return classifyWith(sql, i + 4, n);
+        }
+        if (keywordAt(sql, i, n, "SHOW")) {
+            return StatementKind.SHOW;
+        }
+        if (keywordAt(sql, i, n, "DESCRIBE") || keywordAt(sql, i, n, "DESC")) {
+            return StatementKind.DESCRIBE;
+        }
+        if (keywordAt(sql, i, n, "EXPLAIN")) {
+            return StatementKind.EXPLAIN;
+        }
+        if (keywordAt(sql, i, n, "USE")) {
+            return StatementKind.USE;
+        }
+        if (keywordAt(sql, i, n, "CREATE")) {
+            return isDatabaseTarget(sql, i + 6, n) ? StatementKind.CREATE_DATABASE : StatementKind.DDL;
+        }
+        if (keywordAt(sql, i, n, "DROP")) {
+            return isDatabaseTarget(sql, i + 4, n) ? StatementKind.DROP_DATABASE : StatementKind.DDL;
+        }
+        if (keywordAt(sql, i, n, "ALTER") || keywordAt(sql, i, n, "RENAME") || keywordAt(sql, i, n, "TRUNCATE")) {
+            return StatementKind.DDL;
+        }
+        if (isDmlKeyword(sql, i, n) || keywordAt(sql, i, n, "LOAD")) {
+            return StatementKind.DML;
+        }
+        return StatementKind.OTHER;
+    }
+
+    // Whether a statement can leave state on its connection that would outlive
+    // it: the current database, session variables and autocommit (SET), an
+    // open transaction, table or global locks, temporary tables, server-side
+    // prepared statements and handlers. CALL is included because a procedure
+    // can do any of these. Plain DDL and DML leave nothing behind.
+    public static boolean changesSession(CharSequence sql) {
+        if (sql == null) {
+            return false;
+        }
+        int n = sql.length();
+        int i = skipTrivia(sql, 0, n, true);
+        if (i >= n) {
+            return false;
+        }
+        for (String keyword : SESSION_KEYWORDS) {
+            if (keywordAt(sql, i, n, keyword)) {
+                return true;
+            }
+        }
+        if (keywordAt(sql, i, n, "CREATE")) {
+            i = skipTrivia(sql, i + 6, n, false);
+            if (keywordAt(sql, i, n, "OR")) {
+                i = skipTrivia(sql, i + 2, n, false);
+                if (keywordAt(sql, i, n, "REPLACE")) {
+                    i = skipTrivia(sql, i + 7, n, false);
+                }
+            }
+            return keywordAt(sql, i, n, "TEMPORARY");
+        }
+        return false;
+    }
+
+    private static boolean isDatabaseTarget(CharSequence sql, int i, int n) {
+        i = skipTrivia(sql, i, n, false);
+        return keywordAt(sql, i, n, "DATABASE") || keywordAt(sql, i, n, "SCHEMA");
+    }
+
+    private static boolean isDmlKeyword(CharSequence sql, int i, int n) {
+        return keywordAt(sql, i, n, "INSERT") || keywordAt(sql, i, n, "UPDATE")
+                || keywordAt(sql, i, n, "DELETE") || keywordAt(sql, i, n, "REPLACE");
+    }
+
+    // WITH [RECURSIVE] name [(cols)] AS (...), ... <statement>: the CTE bodies
+    // are parenthesised, so the first SELECT/INSERT/UPDATE/DELETE at depth 0
+    // is the statement itself
+    private static StatementKind classifyWith(CharSequence sql, int i, int n) {
+        int depth = 0;
+        while (i < n) {
+            i = skipTrivia(sql, i, n, false);
+            if (i >= n) {
+                break;
+            }
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, n, c);
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (isIdentifierChar(c)) {
+                if (depth == 0) {
+                    if (keywordAt(sql, i, n, "SELECT")) {
+                        return StatementKind.SELECT;
+                    }
+                    if (isDmlKeyword(sql, i, n)) {
+                        return StatementKind.DML;
+                    }
+                }
+                while (i < n && isIdentifierChar(sql.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        return StatementKind.OTHER;
+    }
+
+    // Skips whitespace and comments, and opening parentheses when asked to
+    static int skipTrivia(CharSequence sql, int i, int n, boolean skipParens) {
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || (skipParens && c == '(')) {
+                i++;
+            } else if (c == '#' || (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-'
+                    && (i + 2 == n || Character.isWhitespace(sql.charAt(i + 2))))) {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                i += 2;
+                while (i < n && !(sql.charAt(i) == '*' && i + 1 < n && sql.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                i = Math.min(n, i + 2);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // Returns the index just past a quoted string, identifier or `name`
+    static int skipQuoted(CharSequence sql, int i, int n, char quote) {
+        i++;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                // A doubled quote is an escaped quote
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static boolean keywordAt(CharSequence sql, int i, int n, String keyword) {
+        int len = keyword.length();
+        if (i + len > n) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            // Keywords are ASCII letters, so folding the input to upper case is enough
+            char c = sql.charAt(i + k);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != keyword.charAt(k)) {
+                return false;
+            }
+        }
+        return i + len == n || !isIdentifierChar(sql.charAt(i + len));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+    }
+}
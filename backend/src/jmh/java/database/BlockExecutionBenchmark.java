@@ -0,0 +1,136 @@
+package database;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Block requests end to end through BlockSqlService: SQL generation, the
+// template cache, metrics and the JDBC call, against H2 in MySQL mode so
+// no server is needed. Absolute numbers are H2's, not MySQL's; compare them
+// between builds, not with production.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockExecutionBenchmark {
+
+    private static final int SEED_ROWS = 10_000;
+
+    private AnnotationConfigApplicationContext context;
+    private BlockSqlService blockSqlService;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setUp() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "", true);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "app.slow-query.file", "",
+                "app.slow-query.threshold", "1h")));
+        context.registerBean(DataSource.class, () -> dataSource);
+        context.registerBean(JdbcTemplate.class, () -> new JdbcTemplate(dataSource));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(ObjectMapper.class, () -> Jackson2ObjectMapperBuilder.json().build());
+        context.register(BlockSqlService.class, SchemaService.class, SqlTemplateCache.class, ResultCache.class,
+                TenantLimits.class, SqlMetrics.class, SlowQueryLog.class, QueryStreamer.class,
+                SchemaEvents.class, IndexAdvisor.class);
+        context.refresh();
+
+        blockSqlService = context.getBean(BlockSqlService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        for (String table : List.of("students", "inserts")) {
+            blockSqlService.executeBlock(Map.of(
+                    "type", "create_table",
+                    "table", table,
+                    "columns", List.of(
+                            Map.of("name", "name", "type", "VARCHAR(100)"),
+                            Map.of("name", "grade", "type", "INT"))));
+        }
+
+        List<Map<String, Object>> inserts = new ArrayList<>(SEED_ROWS);
+        for (int i = 0; i < SEED_ROWS; i++) {
+            inserts.add(insertBlock("students", "student " + i, String.valueOf(i % 100)));
+        }
+        blockSqlService.executeBatch(null, inserts);
+    }
+
+    // Keeps the insert target from growing across iterations
+    @Setup(Level.Iteration)
+    public void clearInserts() {
+        jdbcTemplate.execute("TRUNCATE TABLE `inserts`");
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+        context.close();
+    }
+
+    @Benchmark
+    public Object insert() {
+        return blockSqlService.executeBlock(insertBlock("inserts", "new student", "75"));
+    }
+
+    @Benchmark
+    public Object selectFiltered() {
+        return blockSqlService.executeBlock(Map.of(
+                "type", "select", "table", "students", "filterCol", "name", "filterVal", "student 5000"));
+    }
+
+    @Benchmark
+    public Object selectPage() {
+        return blockSqlService.executeBlock(Map.of(
+                "type", "select", "table", "students", "pageSize", 100, "afterId", 5000));
+    }
+
+    @Benchmark
+    public Object update() {
+        return blockSqlService.executeBlock(Map.of(
+                "type", "update", "table", "students", "col", "grade", "val", "99",
+                "filterCol", "name", "filterVal", "student 42"));
+    }
+
+    // Matches nothing, so the table stays the same size
+    @Benchmark
+    public Object delete() {
+        return blockSqlService.executeBlock(Map.of(
+                "type", "delete", "table", "students", "filterCol", "name", "filterVal", "nobody"));
+    }
+
+    private static Map<String, Object> insertBlock(String table, String name, String grade) {
+        return Map.of(
+                "type", "insert",
+                "table", table,
+                "values", List.of(Map.of("col", "name", "val", name), Map.of("col", "grade", "val", grade)));
+    }
+}
@@ -0,0 +1,111 @@
+package database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// SQL text generation for each block type, built from scratch and served
+// from SqlTemplateCache the way BlockSqlService gets it, with no database.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockSqlGenerationBenchmark {
+
+    @Param({ "4", "16" })
+    public int columnCount;
+
+    private static final String TABLE = "students";
+
+    private List<String> columns;
+    private List<Map<String, String>> definitions;
+    private List<String> definitionStrings;
+    private SqlTemplateCache templates;
+
+    @Setup
+    public void setUp() {
+        columns = new ArrayList<>();
+        definitions = new ArrayList<>();
+        definitionStrings = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            String name = "col_" + i;
+            String type = i % 2 == 0 ? "VARCHAR(100)" : "INT";
+            columns.add(name);
+            definitions.add(Map.of("name", name, "type", type));
+            definitionStrings.add(name + "\u0000" + type);
+        }
+        templates = new SqlTemplateCache();
+    }
+
+    @Benchmark
+    public String buildCreateTable() {
+        return BlockSqlService.buildCreateTableSql(TABLE, definitions);
+    }
+
+    @Benchmark
+    public String buildInsert() {
+        return BlockSqlService.buildInsertSql(TABLE, columns);
+    }
+
+    @Benchmark
+    public String buildSelect() {
+        return BlockSqlService.buildSelectSql(TABLE, "col_0");
+    }
+
+    @Benchmark
+    public String buildUpdate() {
+        return BlockSqlService.buildUpdateSql(TABLE, "col_1", "col_0");
+    }
+
+    @Benchmark
+    public String buildDelete() {
+        return BlockSqlService.buildDeleteSql(TABLE, "col_0");
+    }
+
+    // Includes building the key, as every block request does
+    @Benchmark
+    public String cachedCreateTable() {
+        return templates.get(new SqlTemplateCache.Key("create_table", TABLE, definitionStrings, null),
+                () -> BlockSqlService.buildCreateTableSql(TABLE, definitions));
+    }
+
+    @Benchmark
+    public String cachedInsert() {
+        return templates.get(new SqlTemplateCache.Key("insert", TABLE, columns, null),
+                () -> BlockSqlService.buildInsertSql(TABLE, columns));
+    }
+
+    @Benchmark
+    public String cachedSelect() {
+        return templates.get(new SqlTemplateCache.Key("select", TABLE, List.of(), "col_0"),
+                () -> BlockSqlService.buildSelectSql(TABLE, "col_0"));
+    }
+
+    @Benchmark
+    public String cachedUpdate() {
+        return templates.get(new SqlTemplateCache.Key("update", TABLE, Collections.singletonList("col_1"), "col_0"),
+                () -> BlockSqlService.buildUpdateSql(TABLE, "col_1", "col_0"));
+    }
+
+    @Benchmark
+    public String cachedDelete() {
+        return templates.get(new SqlTemplateCache.Key("delete", TABLE, List.of(), "col_0"),
+                () -> BlockSqlService.buildDeleteSql(TABLE, "col_0"));
+    }
+}
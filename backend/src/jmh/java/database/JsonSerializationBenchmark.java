@@ -0,0 +1,79 @@
+package database;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Writing a queryForList result the way the controllers return it: a list
+// of LinkedHashMaps, through an ObjectMapper configured like Spring Boot's.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int rowCount;
+
+    @Param({ "4", "16" })
+    public int columnCount;
+
+    private ObjectMapper objectMapper;
+    private List<Map<String, Object>> rows;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        rows = new ArrayList<>(rowCount);
+        long now = System.currentTimeMillis();
+        for (int r = 0; r < rowCount; r++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", r + 1);
+            for (int c = 1; c < columnCount; c++) {
+                // The mix of JDBC types a student table usually has
+                Object value = switch (c % 5) {
+                    case 0 -> r * 31 + c;
+                    case 1 -> "value " + r + "-" + c;
+                    case 2 -> BigDecimal.valueOf(r * 100L + c, 2);
+                    case 3 -> new Timestamp(now - r * 60_000L);
+                    default -> r % 7 == 0 ? null : Boolean.valueOf(r % 2 == 0);
+                };
+                row.put("col_" + c, value);
+            }
+            rows.add(row);
+        }
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(rows);
+    }
+
+    // Straight to a stream, as the message converter writes the response
+    @Benchmark
+    public void toStream() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), rows);
+    }
+}
@@ -0,0 +1,166 @@
+package database;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The same SELECT * written as the usual list of maps, as columnar JSON and
+// as MessagePack, from query to last byte. Each benchmark returns the
+// response size, and setUp prints the sizes side by side. H2 in MySQL mode
+// stands in for the server, so compare formats with each other, not with
+// production timings.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultFormatBenchmark {
+
+    private static final String SQL = "SELECT * FROM wide";
+
+    @Param({ "1000", "50000" })
+    public int rowCount;
+
+    @Param({ "20" })
+    public int columnCount;
+
+    private JdbcTemplate jdbcTemplate;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:formats;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        // The mix of types a student table usually has, generated in the database
+        List<String> definitions = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (int c = 1; c < columnCount; c++) {
+            String name = "col_" + c;
+            names.add(name);
+            switch (c % 5) {
+                case 0 -> {
+                    definitions.add(name + " INT");
+                    values.add("n * 31 + " + c);
+                }
+                case 1 -> {
+                    definitions.add(name + " VARCHAR(100)");
+                    values.add("CONCAT('value ', n, '-', " + c + ")");
+                }
+                case 2 -> {
+                    definitions.add(name + " DECIMAL(12,2)");
+                    values.add("n + 0." + c);
+                }
+                case 3 -> {
+                    definitions.add(name + " TIMESTAMP");
+                    values.add("DATEADD('MINUTE', -n, TIMESTAMP '2024-01-01 00:00:00')");
+                }
+                default -> {
+                    definitions.add(name + " BOOLEAN");
+                    values.add("CASE WHEN MOD(n, 7) = 0 THEN NULL ELSE MOD(n, 2) = 0 END");
+                }
+            }
+        }
+        jdbcTemplate.execute("CREATE TABLE wide (id INT AUTO_INCREMENT PRIMARY KEY, "
+                + String.join(", ", definitions) + ")");
+        jdbcTemplate.update("INSERT INTO wide (" + String.join(", ", names) + ") SELECT "
+                + String.join(", ", values) + " FROM (SELECT \"X\" AS n FROM SYSTEM_RANGE(1, ?)) r", rowCount);
+
+        System.out.printf("%nResponse bytes for %d rows x %d columns: maps %d, columnar %d, msgpack %d%n",
+                rowCount, columnCount, maps(), columnar(), msgpack());
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    // What the controllers return today: queryForList, then the message converter
+    @Benchmark
+    public long maps() {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            objectMapper.writeValue(out, jdbcTemplate.queryForList(SQL));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.count;
+    }
+
+    @Benchmark
+    public long columnar() {
+        CountingOutputStream out = new CountingOutputStream();
+        jdbcTemplate.query(SQL, (ResultSetExtractor<Void>) rs -> drain(rs, columnarSink(out)));
+        return out.count;
+    }
+
+    @Benchmark
+    public long msgpack() {
+        CountingOutputStream out = new CountingOutputStream();
+        jdbcTemplate.query(SQL, (ResultSetExtractor<Void>) rs -> drain(rs, new MsgpackRowSink(out)));
+        return out.count;
+    }
+
+    private RowSink columnarSink(OutputStream out) {
+        try {
+            return new ColumnarRowSink(objectMapper, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // What QueryStreamer does with the sink, minus the tenant plumbing
+    private static Void drain(ResultSet rs, RowSink sink) throws SQLException {
+        try {
+            sink.begin(rs.getMetaData());
+            while (rs.next()) {
+                sink.row(rs);
+            }
+            sink.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
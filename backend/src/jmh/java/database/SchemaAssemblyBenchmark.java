@@ -0,0 +1,59 @@
+package database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Grouping INFORMATION_SCHEMA.COLUMNS rows into the /api/schema response.
+// The rows are synthetic: H2's INFORMATION_SCHEMA has no COLUMN_KEY, so the
+// query side is not benchmarked here.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaAssemblyBenchmark {
+
+    @Param({ "5", "50", "500" })
+    public int tableCount;
+
+    @Param({ "8" })
+    public int columnsPerTable;
+
+    private List<Map<String, Object>> columns;
+
+    @Setup
+    public void setUp() {
+        columns = new ArrayList<>(tableCount * columnsPerTable);
+        for (int t = 0; t < tableCount; t++) {
+            for (int c = 0; c < columnsPerTable; c++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("TABLE_NAME", "table_" + t);
+                row.put("COLUMN_NAME", c == 0 ? "id" : "col_" + c);
+                row.put("DATA_TYPE", c == 0 ? "int" : "varchar");
+                row.put("COLUMN_KEY", c == 0 ? "PRI" : "");
+                columns.add(row);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> buildSchema() {
+        return SchemaService.buildSchema(columns);
+    }
+}
@@ -0,0 +1,85 @@
+package database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Statement classification as RawSqlService.executeRawSql does it, against
+// the trim/toUpperCase/startsWith chain it replaced. Each op classifies the
+// whole mix below.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlClassifyBenchmark {
+
+    private static final String LONG_SELECT = "SELECT o.id, o.total, c.name FROM orders o JOIN customers c "
+            + "ON c.id = o.customer_id WHERE o.created_at > '2024-01-01' AND c.country IN ("
+            + "'DE', 'FR', 'NL', 'BE', 'AT', 'CH', 'IT', 'ES', 'PT', 'PL') ORDER BY o.total DESC LIMIT 100";
+
+    private final String[] statements = {
+            "SELECT * FROM students",
+            "select name, grade from students where grade > 80",
+            "  \n\tINSERT INTO students (name, grade) VALUES ('Ada', 91)",
+            "UPDATE students SET grade = grade + 1 WHERE id = 7",
+            "DELETE FROM students WHERE id = 7",
+            "CREATE TABLE courses (id INT PRIMARY KEY, title VARCHAR(100))",
+            "DROP DATABASE scratch",
+            "SHOW TABLES",
+            "DESCRIBE students",
+            "-- top students\nSELECT name FROM students ORDER BY grade DESC LIMIT 3",
+            "/* report */ WITH ranked AS (SELECT name, RANK() OVER (ORDER BY grade DESC) r FROM students) "
+                    + "SELECT * FROM ranked WHERE r <= 3",
+            "(SELECT 1) UNION (SELECT 2)",
+            LONG_SELECT,
+    };
+
+    @Benchmark
+    public void lexer(Blackhole bh) {
+        for (String sql : statements) {
+            bh.consume(SqlLexer.classify(sql));
+        }
+    }
+
+    @Benchmark
+    public void upperCaseChain(Blackhole bh) {
+        for (String sql : statements) {
+            bh.consume(legacyClassify(sql));
+        }
+    }
+
+    // The chain executeRawSql used before SqlLexer
+    private static StatementKind legacyClassify(String sql) {
+        String upperSql = sql.trim().toUpperCase();
+        if (upperSql.startsWith("USE ")) {
+            return StatementKind.USE;
+        }
+        if (upperSql.startsWith("CREATE DATABASE")) {
+            return StatementKind.CREATE_DATABASE;
+        }
+        if (upperSql.startsWith("DROP DATABASE")) {
+            return StatementKind.DROP_DATABASE;
+        }
+        if (upperSql.startsWith("SHOW ")) {
+            return StatementKind.SHOW;
+        }
+        if (upperSql.startsWith("DESCRIBE ") || upperSql.startsWith("DESC ")) {
+            return StatementKind.DESCRIBE;
+        }
+        if (upperSql.startsWith("SELECT")) {
+            return StatementKind.SELECT;
+        }
+        return StatementKind.OTHER;
+    }
+}
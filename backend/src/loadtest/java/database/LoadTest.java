@@ -0,0 +1,433 @@
+package database;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Classroom load against the real app, fully offline: starts an embedded
+// MariaDB (MariaDB4j), boots the Spring app on it with a random port,
+// registers N users concurrently, then drives a weighted mix of raw, block
+// and schema calls from many clients and reports throughput and latency
+// percentiles per endpoint.
+//
+//   mvn -Ploadtest verify -Dloadtest.args="--users=100 --clients=100 --duration=60s"
+//
+// Options (defaults in brackets): --users [50], --clients [users],
+// --warmup [5s], --duration [30s], --mix [raw:4,block:4,schema:2],
+// --virtual-threads [both] = on | off | both, --out [target/loadtest-result.json]
+public class LoadTest {
+
+    private static final String RAW = "POST /api/sql/raw";
+    private static final String BLOCK = "POST /api/sql/block";
+    private static final String SCHEMA = "GET /api/schema";
+    private static final String REGISTER = "POST /api/register";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "50"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", String.valueOf(users)));
+        Duration warmup = duration(options.getOrDefault("warmup", "5s"));
+        Duration runTime = duration(options.getOrDefault("duration", "30s"));
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "raw:4,block:4,schema:2"));
+        String virtualThreads = options.getOrDefault("virtual-threads", "both");
+        Path out = Path.of(options.getOrDefault("out", "target/loadtest-result.json"));
+
+        List<Boolean> modes = switch (virtualThreads) {
+            case "on" -> List.of(true);
+            case "off" -> List.of(false);
+            default -> List.of(false, true);
+        };
+
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        // mariadbd refuses to start as root unless told to (containers, CI)
+        if ("root".equals(System.getProperty("user.name"))) {
+            config.addArg("--user=root");
+        }
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        int dbPort = db.getConfiguration().getPort();
+
+        List<Map<String, Object>> runs = new ArrayList<>();
+        try {
+            for (boolean virtual : modes) {
+                System.out.printf("%n=== virtual threads %s: %d users, %d clients, %ss warmup, %ss run ===%n",
+                        virtual ? "on" : "off", users, clients, warmup.toSeconds(), runTime.toSeconds());
+                runs.add(run(dbPort, virtual, users, clients, warmup, runTime, mix, "vt" + (virtual ? 1 : 0)));
+            }
+        } finally {
+            db.stop();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("users", users);
+        result.put("clients", clients);
+        result.put("warmupSeconds", warmup.toSeconds());
+        result.put("durationSeconds", runTime.toSeconds());
+        result.put("mix", mix);
+        result.put("runs", runs);
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        JSON.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), result);
+        System.out.println("\nResults written to " + out.toAbsolutePath());
+        System.exit(0);
+    }
+
+    private static Map<String, Object> run(int dbPort, boolean virtual, int users, int clients, Duration warmup,
+            Duration runTime, Map<String, Integer> mix, String userPrefix) throws Exception {
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(Main.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:mysql://localhost:" + dbPort + "/new_project"
+                        + "?createDatabaseIfNotExist=true&useSSL=false&allowPublicKeyRetrieval=true"
+                        + "&rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true"
+                        + "&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048",
+                "--spring.datasource.username=root",
+                "--spring.datasource.password=",
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--app.slow-query.file=",
+                "--logging.level.root=WARN");
+        try {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            String base = "http://localhost:" + port;
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("virtualThreads", virtual);
+
+            // Concurrent sign-ups: every user must end up with a database of its own
+            long started = System.nanoTime();
+            Recorder registrations = new Recorder();
+            List<String[]> sessions = register(http, base, userPrefix, users, registrations);
+            double registerSeconds = (System.nanoTime() - started) / 1e9;
+            Set<String> databases = new HashSet<>();
+            for (String[] session : sessions) {
+                databases.add(session[1]);
+            }
+            boolean unique = databases.size() == sessions.size() && !databases.contains(null);
+            System.out.printf("registered %d/%d users in %.2fs, %d distinct databases%s%n", sessions.size(), users,
+                    registerSeconds, databases.size(), unique ? "" : "  <-- DUPLICATE ASSIGNMENT");
+            result.put("registered", sessions.size());
+            result.put("distinctDatabases", databases.size());
+            result.put("uniqueDatabases", unique);
+            result.put("assignments", checkAssignments(dbPort, userPrefix, databases));
+            result.put(REGISTER, registrations.summary(registerSeconds));
+            if (sessions.isEmpty()) {
+                throw new IllegalStateException("No user could register");
+            }
+
+            for (String[] session : sessions) {
+                setUpTenant(http, base, session);
+            }
+
+            List<String> ops = new ArrayList<>();
+            mix.forEach((op, weight) -> {
+                for (int i = 0; i < weight; i++) {
+                    ops.add(op);
+                }
+            });
+
+            long warmupEnd = System.nanoTime() + warmup.toNanos();
+            long runEnd = warmupEnd + runTime.toNanos();
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<Map<String, Recorder>>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                String[] session = sessions.get(c % sessions.size());
+                futures.add(pool.submit(() -> drive(http, base, session, ops, warmupEnd, runEnd)));
+            }
+
+            Map<String, Recorder> merged = new TreeMap<>();
+            for (Future<Map<String, Recorder>> future : futures) {
+                future.get().forEach((endpoint, recorder) ->
+                        merged.computeIfAbsent(endpoint, k -> new Recorder()).addAll(recorder));
+            }
+            pool.shutdown();
+
+            double seconds = runTime.toNanos() / 1e9;
+            Map<String, Object> endpoints = new LinkedHashMap<>();
+            System.out.printf("%-22s %8s %7s %9s %9s %9s %9s %9s%n",
+                    "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+            for (Map.Entry<String, Recorder> entry : merged.entrySet()) {
+                Map<String, Object> summary = entry.getValue().summary(seconds);
+                endpoints.put(entry.getKey(), summary);
+                System.out.printf("%-22s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                        summary.get("requests"), summary.get("errors"), summary.get("throughput"),
+                        summary.get("p50Ms"), summary.get("p95Ms"), summary.get("p99Ms"), summary.get("maxMs"));
+            }
+            result.put("endpoints", endpoints);
+            return result;
+        } finally {
+            app.close();
+        }
+    }
+
+    private static List<String[]> register(HttpClient http, String base, String prefix, int users,
+            Recorder recorder) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(users, 64));
+        List<Future<String[]>> futures = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String username = prefix + "_user_" + i + "_" + System.nanoTime();
+            futures.add(pool.submit(() -> {
+                long started = System.nanoTime();
+                HttpResponse<String> response = post(http, base + "/api/register", null,
+                        Map.of("username", username, "password", "secret"));
+                recorder.record(System.nanoTime() - started, response.statusCode());
+                if (response.statusCode() != 200) {
+                    System.err.println("register " + username + " failed: " + response.body());
+                    return null;
+                }
+                Map<?, ?> body = JSON.readValue(response.body(), Map.class);
+                return new String[] { (String) body.get("token"), (String) body.get("dbName") };
+            }));
+        }
+        List<String[]> sessions = new ArrayList<>();
+        for (Future<String[]> future : futures) {
+            String[] session = future.get();
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        pool.shutdown();
+        return sessions;
+    }
+
+    // The same check from the database's side: one user_databases row per
+    // user, no database handed to two users, and every database really there
+    private static Map<String, Object> checkAssignments(int dbPort, String prefix, Set<String> databases)
+            throws SQLException {
+        Map<String, Object> check = new LinkedHashMap<>();
+        try (Connection con = DriverManager.getConnection(
+                "jdbc:mysql://localhost:" + dbPort + "/new_project?useSSL=false&allowPublicKeyRetrieval=true",
+                "root", "")) {
+            check.put("rows", count(con, "SELECT COUNT(*) FROM user_databases WHERE username LIKE ?", prefix + "\\_%"));
+            check.put("usersWithSeveralRows", count(con, "SELECT COUNT(*) FROM (SELECT username FROM user_databases "
+                    + "WHERE username LIKE ? GROUP BY username HAVING COUNT(*) > 1) t", prefix + "\\_%"));
+            check.put("sharedDatabases", count(con, "SELECT COUNT(*) FROM (SELECT db_name FROM user_databases "
+                    + "WHERE db_name IS NOT NULL AND username IS NOT NULL GROUP BY db_name HAVING COUNT(*) > 1) t", null));
+            int missing = 0;
+            for (String dbName : databases) {
+                missing += count(con, "SELECT 1 - COUNT(*) FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?", dbName);
+            }
+            check.put("missingDatabases", missing);
+        }
+        System.out.printf("user_databases: %s%n", check);
+        return check;
+    }
+
+    private static int count(Connection con, String sql, String arg) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            if (arg != null) {
+                ps.setString(1, arg);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // One table per tenant with some rows for the reads to find
+    private static void setUpTenant(HttpClient http, String base, String[] session) throws Exception {
+        post(http, base + "/api/sql/block", session[0], Map.of(
+                "type", "create_table",
+                "table", "load_items",
+                "columns", List.of(
+                        Map.of("name", "name", "type", "VARCHAR(100)"),
+                        Map.of("name", "qty", "type", "INT"))));
+        List<Map<String, Object>> blocks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            blocks.add(insertBlock("item " + i, String.valueOf(i % 50)));
+        }
+        post(http, base + "/api/sql/block/batch", session[0], Map.of("blocks", blocks));
+    }
+
+    private static Map<String, Recorder> drive(HttpClient http, String base, String[] session, List<String> ops,
+            long warmupEnd, long runEnd) {
+        Map<String, Recorder> recorders = new LinkedHashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < runEnd) {
+            String op = ops.get(random.nextInt(ops.size()));
+            int qty = random.nextInt(50);
+            String endpoint;
+            long started = System.nanoTime();
+            int status;
+            try {
+                switch (op) {
+                    case "raw" -> {
+                        endpoint = RAW;
+                        String sql = random.nextInt(4) == 0
+                                ? "INSERT INTO load_items (name, qty) VALUES ('raw item', " + qty + ")"
+                                : "SELECT * FROM load_items WHERE qty = " + qty;
+                        status = post(http, base + "/api/sql/raw", session[0], Map.of("sql", sql)).statusCode();
+                    }
+                    case "block" -> {
+                        endpoint = BLOCK;
+                        Map<String, Object> block = random.nextInt(4) == 0
+                                ? insertBlock("block item", String.valueOf(qty))
+                                : Map.of("type", "select", "table", "load_items",
+                                        "filterCol", "qty", "filterVal", String.valueOf(qty));
+                        status = post(http, base + "/api/sql/block", session[0], block).statusCode();
+                    }
+                    default -> {
+                        endpoint = SCHEMA;
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/schema"))
+                                .header(TenantDirectory.TOKEN_HEADER, session[0])
+                                .GET().build();
+                        status = http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+                    }
+                }
+            } catch (Exception e) {
+                endpoint = op;
+                status = -1;
+            }
+            if (started >= warmupEnd) {
+                recorders.computeIfAbsent(endpoint, k -> new Recorder()).record(System.nanoTime() - started, status);
+            }
+        }
+        return recorders;
+    }
+
+    private static Map<String, Object> insertBlock(String name, String qty) {
+        return Map.of(
+                "type", "insert",
+                "table", "load_items",
+                "values", List.of(Map.of("col", "name", "val", name), Map.of("col", "qty", "val", qty)));
+    }
+
+    private static HttpResponse<String> post(HttpClient http, String url, String token, Object body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body)));
+        if (token != null) {
+            request.header(TenantDirectory.TOKEN_HEADER, token);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Latencies in nanoseconds plus status counts, one per client thread,
+    // merged once the run is over
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+        private final Map<Integer, Integer> statuses = new TreeMap<>();
+
+        synchronized void record(long nanos, int status) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            statuses.merge(status, 1, Integer::sum);
+            if (status < 200 || status >= 300) {
+                errors++;
+            }
+        }
+
+        synchronized void addAll(Recorder other) {
+            for (int i = 0; i < other.count; i++) {
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = other.latencies[i];
+            }
+            errors += other.errors;
+            other.statuses.forEach((status, n) -> statuses.merge(status, n, Integer::sum));
+        }
+
+        synchronized Map<String, Object> summary(double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", count);
+            summary.put("errors", errors);
+            summary.put("statuses", new TreeMap<>(statuses));
+            summary.put("throughput", count / seconds);
+            summary.put("p50Ms", percentile(sorted, 0.50));
+            summary.put("p95Ms", percentile(sorted, 0.95));
+            summary.put("p99Ms", percentile(sorted, 0.99));
+            summary.put("maxMs", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6);
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (!Set.of("raw", "block", "schema").contains(pair[0])) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + pair[0]);
+            }
+            weights.put(pair[0], pair.length > 1 ? Integer.parseInt(pair[1]) : 1);
+        }
+        return weights;
+    }
+
+    // 30s, 2m or plain seconds
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+}
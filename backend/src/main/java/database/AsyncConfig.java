@@ -0,0 +1,81 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Semaphore;
+
+// Executor for async MVC work: the WebAsyncTask handlers (/raw, /block,
+// /block/batch, /import, /cursor) and every StreamingResponseBody (streamed
+// formats, exports). That work mostly holds or waits for a JDBC connection,
+// so it gets its own pool (app.async.threads, app.async.queue) rather than
+// Spring Boot's 8-thread default with an unbounded queue, where a few slow
+// exports stalled every tenant. Past the bounded queue requests are rejected
+// with a 503 (ApiExceptionHandler) instead of waiting behind everyone else.
+// In virtual-thread mode (which, as for Spring Boot's own executors, needs
+// Java 21) each task gets a virtual thread, with the same bound on how many
+// may be running or waiting.
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    private final AsyncTaskExecutor executor;
+    private final ThreadPoolTaskExecutor pool;
+
+    public AsyncConfig(@Value("${app.async.threads:20}") int threads,
+            @Value("${app.async.queue:100}") int queue,
+            Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            Semaphore slots = new Semaphore(threads + queue);
+            SimpleAsyncTaskExecutor virtualThreads = new SimpleAsyncTaskExecutor("mvc-async-");
+            virtualThreads.setVirtualThreads(true);
+            this.pool = null;
+            this.executor = new TaskExecutorAdapter(task -> {
+                if (!slots.tryAcquire()) {
+                    throw new TaskRejectedException("Async request limit of " + (threads + queue) + " reached");
+                }
+                try {
+                    virtualThreads.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    slots.release();
+                    throw e;
+                }
+            });
+        } else {
+            this.pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix("mvc-async-");
+            pool.setCorePoolSize(threads);
+            pool.setMaxPoolSize(threads);
+            pool.setQueueCapacity(queue);
+            pool.initialize();
+            this.executor = pool;
+        }
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
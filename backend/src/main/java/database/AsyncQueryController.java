@@ -0,0 +1,53 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+// Submit a statement, then poll it: POST /api/sql/async, GET /api/sql/async/{id}
+// until it is DONE, then GET /api/sql/async/{id}/rows?offset=..&limit=..
+@RestController
+@RequestMapping("/api/sql/async")
+public class AsyncQueryController {
+
+    @Autowired
+    private AsyncQueryService asyncQueryService;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    @PostMapping
+    public ResponseEntity<?> submit(@RequestBody Map<String, String> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String dbName = tenantDirectory.resolve(token, payload.get("dbName"));
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(asyncQueryService.submit(dbName, queryId, payload.get("sql")));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> status(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(asyncQueryService.status(tenantDirectory.resolve(token, dbName), id));
+    }
+
+    @GetMapping("/{id}/rows")
+    public ResponseEntity<?> rows(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(asyncQueryService.page(tenantDirectory.resolve(token, dbName), id, offset, limit));
+    }
+
+    // Cancels the query if it has not finished, and frees its result
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> discard(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        if (!asyncQueryService.discard(tenantDirectory.resolve(token, dbName), id))
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No async query " + id));
+        return ResponseEntity.ok(Map.of("message", "Query " + id + " discarded."));
+    }
+}
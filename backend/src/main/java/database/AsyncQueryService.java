@@ -0,0 +1,305 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Async mode for heavy statements: submit() hands back a query id at once and
+// the statement runs on a small dedicated pool, so neither a server thread
+// nor a proxy connection waits on it. Clients poll the job and page through
+// the rows once it is done. Finished jobs are dropped after a TTL. Retained
+// rows share a global byte budget; a result that does not fit fails and
+// points the client at cursors, which spill to disk.
+@Service
+public class AsyncQueryService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    private static final class Job {
+        final QueryRegistry.RunningQuery query;
+        final String dbName;
+        final String sql;
+        final Instant submittedAt = Instant.now();
+        final AtomicInteger rowsSoFar = new AtomicInteger();
+        final AtomicLong retainedBytes = new AtomicLong();
+        volatile Status status = Status.QUEUED;
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+        volatile List<Map<String, Object>> rows;
+        volatile Object message;
+        volatile String truncated;
+        volatile String error;
+        volatile Future<?> future;
+
+        Job(QueryRegistry.RunningQuery query, String dbName, String sql) {
+            this.query = query;
+            this.dbName = dbName;
+            this.sql = sql;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RawSqlService rawSqlService;
+
+    @Autowired
+    private TenantLimits tenantLimits;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService sweeper;
+    private final long ttlMillis;
+    private final long resultBudget;
+    private final AtomicLong retained = new AtomicLong();
+
+    public AsyncQueryService(@Value("${app.async-query.threads:4}") int threads,
+            @Value("${app.async-query.queue:100}") int queueSize,
+            @Value("${app.async-query.result-ttl:10m}") Duration resultTtl,
+            @Value("${app.async-query.result-budget:268435456}") long resultBudget) {
+        this.resultBudget = resultBudget;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "async-query-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.ttlMillis = resultTtl.toMillis();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "async-query-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    // A full queue is reported as 429, so clients back off instead of piling up
+    public Map<String, Object> submit(String dbName, String requestedId, String sql) {
+        if (SqlLexer.classify(sql) == StatementKind.EMPTY) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No SQL statement to execute");
+        }
+        QueryRegistry.RunningQuery query = queryRegistry.register(dbName, requestedId, sql);
+        Job job = new Job(query, dbName, sql);
+        jobs.put(key(dbName, query.getId()), job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(key(dbName, query.getId()));
+            queryRegistry.finish(query);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Async queue is full, try again shortly");
+        }
+        return status(job);
+    }
+
+    public Map<String, Object> status(String dbName, String id) {
+        return status(job(dbName, id));
+    }
+
+    public Map<String, Object> page(String dbName, String id, int offset, int limit) {
+        Job job = job(dbName, id);
+        if (job.status != Status.DONE) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Query " + id + " is " + job.status);
+        }
+        if (job.rows == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query " + id + " returned no rows");
+        }
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset must be >= 0 and limit between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Map<String, Object>> rows = job.rows;
+        int from = Math.min(offset, rows.size());
+        int to = Math.min(rows.size(), from + limit);
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("rows", rows.subList(from, to));
+        page.put("offset", from);
+        page.put("total", rows.size());
+        page.put("nextOffset", to < rows.size() ? to : null);
+        return page;
+    }
+
+    // Cancels a queued or running job and drops it
+    public boolean discard(String dbName, String id) {
+        Job job = jobs.remove(key(dbName, id));
+        if (job == null) {
+            return false;
+        }
+        release(job);
+        queryRegistry.cancel(job.query);
+        if (job.future != null && job.status == Status.QUEUED && job.future.cancel(false)) {
+            job.status = Status.CANCELLED;
+            queryRegistry.finish(job.query);
+        }
+        return true;
+    }
+
+    private void run(Job job) {
+        TenantContext.set(job.dbName);
+        // The job stays queued until the tenant has a free slot, rather than
+        // failing like a synchronous request that waited too long
+        try (TenantLimits.Permit permit = tenantLimits.admitQueued(job.dbName, job.query::isCancelled)) {
+            job.status = Status.RUNNING;
+            job.startedAt = Instant.now();
+            queryRegistry.enter(job.query);
+            StatementKind kind = SqlLexer.classify(job.sql);
+            if (kind.returnsRows()) {
+                // Collected here rather than with queryForList so pollers can
+                // see the row count climb
+                ColumnMapRowMapper mapper = new ColumnMapRowMapper();
+                List<Map<String, Object>> rows = new ArrayList<>();
+                String tag = SqlMetrics.kindTag(kind);
+                sqlMetrics.time(tag, job.dbName, () -> slowQueryLog.time(tag, job.dbName, job.sql, null, () -> {
+                    jdbcTemplate.query(job.sql, (RowCallbackHandler) rs -> {
+                        rows.add(mapper.mapRow(rs, rows.size()));
+                        job.rowsSoFar.incrementAndGet();
+                    });
+                    return rows;
+                }));
+                List<Map<String, Object>> capped = tenantLimits.cap(job.dbName, rows);
+                if (capped instanceof CappedRows cappedRows) {
+                    job.truncated = cappedRows.getLimit();
+                }
+                retain(job, capped);
+                job.rows = capped;
+            } else {
+                job.message = rawSqlService.executeRawSql(job.sql, job.dbName);
+            }
+            job.status = Status.DONE;
+        } catch (Exception e) {
+            if (job.query.isCancelled()) {
+                job.status = Status.CANCELLED;
+            } else {
+                if (TenantLimits.isTimeout(e)) {
+                    tenantLimits.recordTimeout(job.dbName);
+                }
+                job.error = e.getMessage();
+                job.status = Status.FAILED;
+            }
+        } finally {
+            job.finishedAt = Instant.now();
+            queryRegistry.finish(job.query);
+            TenantContext.clear();
+        }
+    }
+
+    private Map<String, Object> status(Job job) {
+        Instant end = job.finishedAt != null ? job.finishedAt : Instant.now();
+        Instant start = job.startedAt != null ? job.startedAt : end;
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", job.query.getId());
+        status.put("status", job.status);
+        status.put("submittedAt", job.submittedAt.toString());
+        status.put("queuedMs", Duration.between(job.submittedAt, start).toMillis());
+        status.put("elapsedMs", Duration.between(start, end).toMillis());
+        status.put("rowsSoFar", job.rowsSoFar.get());
+        if (job.status == Status.DONE) {
+            if (job.rows != null) {
+                status.put("rows", job.rows.size());
+            } else {
+                status.put("message", job.message);
+            }
+            if (job.truncated != null) {
+                status.put("truncated", job.truncated);
+            }
+        }
+        if (job.error != null) {
+            status.put("error", job.error);
+        }
+        if (job.finishedAt != null) {
+            status.put("expiresAt", job.finishedAt.plusMillis(ttlMillis).toString());
+        }
+        return status;
+    }
+
+    private Job job(String dbName, String id) {
+        Job job = jobs.get(key(dbName, id));
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No async query " + id);
+        }
+        return job;
+    }
+
+    // Reserves the rows against the global budget until the job is dropped
+    private void retain(Job job, List<Map<String, Object>> rows) {
+        long bytes = ResultSizes.estimate(rows);
+        while (true) {
+            long current = retained.get();
+            if (current + bytes > resultBudget) {
+                throw new IllegalStateException("Retained async results are over budget; "
+                        + "fetch or discard finished queries, or page through /api/sql/cursor instead");
+            }
+            if (retained.compareAndSet(current, current + bytes)) {
+                break;
+            }
+        }
+        job.retainedBytes.set(bytes);
+        // Discarded while running: nobody else will give the bytes back
+        if (jobs.get(key(job.dbName, job.query.getId())) != job) {
+            release(job);
+        }
+    }
+
+    private void release(Job job) {
+        retained.addAndGet(-job.retainedBytes.getAndSet(0));
+    }
+
+    private void sweep() {
+        Instant cutoff = Instant.now().minusMillis(ttlMillis);
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt != null && job.finishedAt.isBefore(cutoff)) {
+                release(job);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static String key(String dbName, String id) {
+        return dbName + "/" + id;
+    }
+}
@@ -1,6 +1,7 @@
 package database;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +16,9 @@ public class AuthController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
     @PostConstruct
     public void init() {
         authService.initBaseTables();
@@ -29,14 +33,16 @@ public class AuthController {
             return ResponseEntity.badRequest().body(Map.of("error", "Missing username or password"));
         }
 
-        if (authService.checkUsername(username)) {
+        // username is UNIQUE, so the insert itself tells us if it is taken
+        String dbName;
+        try {
+            dbName = authService.register(username, password);
+        } catch (DuplicateKeyException e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Username already exists"));
         }
+        String token = tenantDirectory.openSession(username, dbName);
 
-        authService.register(username, password);
-        String dbName = authService.createUserDatabase(username);
-
-        return ResponseEntity.ok(Map.of("message", "Registered successfully", "dbName", dbName));
+        return ResponseEntity.ok(Map.of("message", "Registered successfully", "dbName", dbName, "token", token));
     }
 
     @PostMapping("/login")
@@ -44,14 +50,23 @@ public class AuthController {
         String username = payload.get("username");
         String password = payload.get("password");
 
-        if (authService.checkLogin(username, password)) {
-            String dbName = authService.getUserDatabase(username);
+        Map<String, Object> account = authService.login(username, password);
+        if (account != null) {
+            String dbName = (String) account.get("db_name");
             if (dbName == null) {
                 dbName = authService.createUserDatabase(username);
             }
-            return ResponseEntity.ok(Map.of("message", "Login successful", "username", username, "dbName", dbName));
+            String token = tenantDirectory.openSession(username, dbName);
+            return ResponseEntity.ok(Map.of("message", "Login successful", "username", username, "dbName", dbName,
+                    "token", token));
         } else {
             return ResponseEntity.status(401).body(Map.of("error", "Invalid credentials"));
         }
     }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        tenantDirectory.closeSession(token);
+        return ResponseEntity.ok(Map.of("message", "Logged out"));
+    }
 }
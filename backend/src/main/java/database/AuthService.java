@@ -14,6 +14,12 @@ public class AuthService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TenantDbProvisioner tenantDbProvisioner;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
     @Transactional
     public void initBaseTables() {
         jdbcTemplate.execute(
@@ -28,51 +34,38 @@ public class AuthService {
                         "db_name VARCHAR(100))");
     }
 
-    public void register(String username, String password) {
+    // Creates the account and assigns its database. A duplicate username fails
+    // the insert with DuplicateKeyException. If the assignment fails the
+    // credentials are removed again and a database already claimed goes back
+    // to the pool, so the same username can simply retry instead of being
+    // stuck with an account that has no database. CREATE DATABASE commits
+    // implicitly, so this cannot be one transaction.
+    public String register(String username, String password) {
         String sql = "INSERT INTO login_credentials (username, password) VALUES (?, ?)";
-        jdbcTemplate.update(sql, username, password);
-    }
-
-    public boolean checkLogin(String username, String password) {
-        String sql = "SELECT COUNT(*) FROM login_credentials WHERE username = ? AND password = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, username, password);
-        return count != null && count > 0;
+        sqlMetrics.time("auth_register", null, () -> jdbcTemplate.update(sql, username, password));
+        try {
+            return tenantDbProvisioner.assign(username);
+        } catch (RuntimeException e) {
+            jdbcTemplate.update("UPDATE user_databases SET username = NULL WHERE username = ?", username);
+            jdbcTemplate.update("DELETE FROM login_credentials WHERE username = ?", username);
+            throw e;
+        }
     }
 
-    public boolean checkUsername(String username) {
-        String sql = "SELECT COUNT(*) FROM login_credentials WHERE username = ?";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, username);
-        return count != null && count > 0;
+    // Checks the credentials and fetches the user's database in one round
+    // trip. Returns null when the credentials do not match; db_name is null
+    // when the user has no database yet.
+    public Map<String, Object> login(String username, String password) {
+        String sql = "SELECT l.username, d.db_name FROM login_credentials l " +
+                "LEFT JOIN user_databases d ON d.username = l.username " +
+                "WHERE l.username = ? AND l.password = ?";
+        List<Map<String, Object>> rows = sqlMetrics.time("auth_login", null,
+                () -> jdbcTemplate.queryForList(sql, username, password));
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
-    @Transactional
+    // Assigns a database from the pre-provisioned pool
     public String createUserDatabase(String username) {
-        // Calculate next ID manually (as per original logic, though AUTO_INCREMENT is
-        // better)
-        // Original logic: SELECT IFNULL(MAX(id), 0) + 1 ...
-        String idSql = "SELECT IFNULL(MAX(id), 0) + 1 FROM user_databases";
-        Integer nextId = jdbcTemplate.queryForObject(idSql, Integer.class);
-        if (nextId == null)
-            nextId = 1;
-
-        String dbName = "user_db_" + nextId;
-
-        // Create database
-        jdbcTemplate.execute("CREATE DATABASE IF NOT EXISTS `" + dbName + "`");
-
-        // Record mapping
-        String insertSql = "INSERT INTO user_databases (username, db_name) VALUES (?, ?)";
-        jdbcTemplate.update(insertSql, username, dbName);
-
-        return dbName;
-    }
-
-    public String getUserDatabase(String username) {
-        String sql = "SELECT db_name FROM user_databases WHERE username = ?";
-        try {
-            return jdbcTemplate.queryForObject(sql, String.class, username);
-        } catch (Exception e) {
-            return null;
-        }
+        return tenantDbProvisioner.assign(username);
     }
 }
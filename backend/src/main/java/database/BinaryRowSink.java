@@ -0,0 +1,212 @@
+package database;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+// Compact columnar binary export. Layout:
+//
+//   "SQLB" version:u8 columnCount:varint (name:string jdbcType:varint)*
+//   frame*
+//
+// Frames start with a tag byte: 1 = row group, 2 = error (message:string),
+// 0 = end. A row group is rowCount:varint followed by each column in turn:
+// a null bitmap of ceil(rowCount / 8) bytes (bit set = NULL), then the
+// non-null values. Integer columns are zigzag varints, floating point
+// columns are 8-byte big-endian doubles and everything else is a string.
+// BIGINT UNSIGNED can pass Long.MAX_VALUE, so it is announced as DECIMAL and
+// sent as a string.
+// Strings are varint byte length + UTF-8. Rows are buffered one group at a
+// time, so memory stays bounded whatever the table size.
+public class BinaryRowSink implements RowSink {
+
+    private static final int GROUP_ROWS = 4096;
+    private static final int VERSION = 1;
+
+    private static final int KIND_LONG = 0;
+    private static final int KIND_DOUBLE = 1;
+    private static final int KIND_STRING = 2;
+
+    private final OutputStream out;
+    private int[] kinds;
+    private ColumnBuffer[] columns;
+    private int[] rowStart;
+    private int groupRows;
+
+    public BinaryRowSink(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    @Override
+    public void begin(ResultSetMetaData meta) throws SQLException, IOException {
+        int count = meta.getColumnCount();
+        kinds = new int[count];
+        columns = new ColumnBuffer[count];
+        rowStart = new int[count];
+
+        out.write(new byte[] { 'S', 'Q', 'L', 'B', VERSION });
+        writeVarint(out, count);
+        for (int i = 0; i < count; i++) {
+            int jdbcType = meta.getColumnType(i + 1);
+            if (jdbcType == Types.BIGINT && !meta.isSigned(i + 1)) {
+                jdbcType = Types.DECIMAL;
+            }
+            kinds[i] = kindOf(jdbcType);
+            columns[i] = new ColumnBuffer();
+            writeString(out, JdbcUtils.lookupColumnName(meta, i + 1));
+            writeVarint(out, jdbcType);
+        }
+    }
+
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < columns.length; i++) {
+            rowStart[i] = columns[i].values.size();
+        }
+        try {
+            writeRow(rs);
+        } catch (SQLException | RuntimeException e) {
+            // A row that failed part way is dropped, so the group stays whole
+            // for error() to send
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].truncate(groupRows, rowStart[i]);
+            }
+            throw e;
+        }
+
+        if (++groupRows == GROUP_ROWS) {
+            writeGroup();
+        }
+    }
+
+    private void writeRow(ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < columns.length; i++) {
+            ColumnBuffer column = columns[i];
+            switch (kinds[i]) {
+                case KIND_LONG -> {
+                    long value = rs.getLong(i + 1);
+                    if (column.markNull(groupRows, rs.wasNull())) {
+                        writeVarint(column.values, (value << 1) ^ (value >> 63));
+                    }
+                }
+                case KIND_DOUBLE -> {
+                    double value = rs.getDouble(i + 1);
+                    if (column.markNull(groupRows, rs.wasNull())) {
+                        long bits = Double.doubleToLongBits(value);
+                        for (int shift = 56; shift >= 0; shift -= 8) {
+                            column.values.write((int) (bits >>> shift));
+                        }
+                    }
+                }
+                default -> {
+                    String value = rs.getString(i + 1);
+                    if (column.markNull(groupRows, value == null)) {
+                        writeString(column.values, value);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        writeGroup();
+        out.write(0);
+        out.flush();
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        // Rows read before the failure still reach the client, ahead of the error
+        writeGroup();
+        out.write(2);
+        writeString(out, message);
+        out.flush();
+    }
+
+    private void writeGroup() throws IOException {
+        if (groupRows == 0) {
+            return;
+        }
+        out.write(1);
+        writeVarint(out, groupRows);
+        int bitmapBytes = (groupRows + 7) / 8;
+        for (ColumnBuffer column : columns) {
+            out.write(column.nulls, 0, bitmapBytes);
+            column.values.writeTo(out);
+            column.reset();
+        }
+        groupRows = 0;
+    }
+
+    private static int kindOf(int jdbcType) {
+        switch (jdbcType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return KIND_LONG;
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return KIND_DOUBLE;
+            default:
+                return KIND_STRING;
+        }
+    }
+
+    private static void writeString(OutputStream target, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(target, bytes.length);
+        target.write(bytes);
+    }
+
+    private static void writeVarint(OutputStream target, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            target.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.write((int) value);
+    }
+
+    private static class ColumnBuffer {
+        final byte[] nulls = new byte[(GROUP_ROWS + 7) / 8];
+        final Values values = new Values();
+
+        // Records the null bit for this row; returns true if a value follows
+        boolean markNull(int row, boolean isNull) {
+            if (isNull) {
+                nulls[row >> 3] |= (byte) (1 << (row & 7));
+            }
+            return !isNull;
+        }
+
+        // Takes back whatever a failed row wrote
+        void truncate(int row, int size) {
+            nulls[row >> 3] &= (byte) ~(1 << (row & 7));
+            values.truncate(size);
+        }
+
+        void reset() {
+            Arrays.fill(nulls, (byte) 0);
+            values.reset();
+        }
+    }
+
+    private static class Values extends ByteArrayOutputStream {
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
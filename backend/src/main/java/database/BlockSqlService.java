@@ -5,23 +5,98 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Service
 public class BlockSqlService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Pattern COLUMN_TYPE = Pattern.compile("[A-Za-z][A-Za-z0-9_ (),.']*");
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SchemaService schemaService;
+
+    @Autowired
+    private SqlTemplateCache templates;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private TenantLimits tenantLimits;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Autowired
+    private QueryStreamer queryStreamer;
+
+    @Autowired
+    private IndexAdvisor indexAdvisor;
+
     @Transactional
     public Object executeBlock(Map<String, Object> payload) {
-        String dbName = (String) payload.get("dbName");
-        String type = (String) payload.get("type");
+        Object result = sqlMetrics.time(SqlMetrics.blockTag(payload.get("type")), (String) payload.get("dbName"),
+                () -> runBlock(payload));
+        if (!"select".equals(payload.get("type"))) {
+            resultCache.invalidate((String) payload.get("dbName"));
+        }
+        return result;
+    }
+
+    // Runs the blocks in order inside one transaction, so they share a single
+    // connection. Consecutive inserts into the same table and columns go to
+    // the driver as one JDBC batch, which rewriteBatchedStatements turns into
+    // multi-row INSERTs. Note that MySQL commits implicitly around DDL, so a
+    // create_table block cannot be rolled back with the rest.
+    @Transactional
+    public List<Object> executeBatch(String dbName, List<Map<String, Object>> blocks) {
+        // Registered up front so it also fires if a later block fails
+        resultCache.invalidate(dbName);
+
+        List<Object> results = new ArrayList<>(blocks.size());
+        int i = 0;
+        while (i < blocks.size()) {
+            Map<String, Object> block = new HashMap<>(blocks.get(i));
+            block.put("dbName", dbName);
+
+            int end = i + 1;
+            try {
+                String shape = "insert".equals(block.get("type")) ? insertShape(block) : null;
+                while (shape != null && end < blocks.size() && "insert".equals(blocks.get(end).get("type"))
+                        && shape.equals(insertShape(blocks.get(end)))) {
+                    end++;
+                }
+
+                if (end - i > 1) {
+                    List<Map<String, Object>> run = blocks.subList(i, end);
+                    results.addAll(sqlMetrics.time("block_insert_batch", dbName, () -> insertBatch(dbName, run)));
+                } else {
+                    results.add(sqlMetrics.time(SqlMetrics.blockTag(block.get("type")), dbName, () -> runBlock(block)));
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Block " + (i + 1) + " failed: " + e.getMessage(), e);
+            }
+            i = end;
+        }
+        return results;
+    }
 
-        // Switch context
-        jdbcTemplate.execute("USE `" + dbName + "`");
+    private Object runBlock(Map<String, Object> payload) {
+        String type = (String) payload.get("type");
 
         switch (type) {
             case "create_table":
@@ -43,52 +118,246 @@ public class BlockSqlService {
         String tableName = (String) payload.get("table");
         List<Map<String, String>> columns = (List<Map<String, String>>) payload.get("columns");
 
+        // Name and type joined by NUL, which no identifier can contain, so two
+        // different column lists never share a key
+        List<String> definitions = new ArrayList<>();
+        for (Map<String, String> col : columns) {
+            definitions.add(col.get("name") + "\u0000" + col.get("type"));
+        }
+
+        String sql = templates.get(new SqlTemplateCache.Key("create_table", tableName, definitions, null),
+                () -> buildCreateTableSql(tableName, columns));
+
+        jdbcTemplate.execute(sql);
+        schemaService.invalidate((String) payload.get("dbName"));
+        return "Table '" + tableName + "' created.";
+    }
+
+    static String buildCreateTableSql(String tableName, List<Map<String, String>> columns) {
         StringBuilder sb = new StringBuilder();
-        sb.append("CREATE TABLE IF NOT EXISTS `").append(tableName).append("` (");
+        sb.append("CREATE TABLE IF NOT EXISTS ").append(SqlTemplateCache.quote(tableName)).append(" (");
         sb.append("id INT AUTO_INCREMENT PRIMARY KEY");
 
         for (Map<String, String> col : columns) {
-            sb.append(", `").append(col.get("name")).append("` ").append(col.get("type"));
+            String type = col.get("type");
+            if (type == null || !COLUMN_TYPE.matcher(type).matches()) {
+                throw new IllegalArgumentException("Invalid column type: " + type);
+            }
+            sb.append(", ").append(SqlTemplateCache.quote(col.get("name"))).append(" ").append(type);
         }
         sb.append(")");
-
-        jdbcTemplate.execute(sb.toString());
-        return "Table '" + tableName + "' created.";
+        return sb.toString();
     }
 
     private String insertRow(Map<String, Object> payload) {
         String tableName = (String) payload.get("table");
         List<Map<String, String>> values = (List<Map<String, String>>) payload.get("values");
+        if (values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("Insert needs at least one value");
+        }
+
+        List<String> columns = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        for (Map<String, String> value : values) {
+            columns.add(value.get("col"));
+            args.add(value.get("val"));
+        }
+
+        int affected = jdbcTemplate.update(insertSql(tableName, columns), args.toArray());
+        return "Inserted " + affected + " row(s).";
+    }
+
+    // Inserts a run of same-shape insert blocks as one JDBC batch
+    private List<String> insertBatch(String dbName, List<Map<String, Object>> blocks) {
+        String tableName = (String) blocks.get(0).get("table");
+        List<String> columns = new ArrayList<>();
+        for (Map<String, String> value : (List<Map<String, String>>) blocks.get(0).get("values")) {
+            columns.add(value.get("col"));
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(blocks.size());
+        for (Map<String, Object> block : blocks) {
+            List<Map<String, String>> values = (List<Map<String, String>>) block.get("values");
+            Object[] args = new Object[values.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = values.get(i).get("val");
+            }
+            batchArgs.add(args);
+        }
+
+        String sql = insertSql(tableName, columns);
+        int[] counts = slowQueryLog.time("block_insert_batch", dbName, sql,
+                batchArgs.get(0), () -> jdbcTemplate.batchUpdate(sql, batchArgs));
+
+        // Rewritten batches report SUCCESS_NO_INFO; each insert block is one row
+        List<String> results = new ArrayList<>(counts.length);
+        for (int count : counts) {
+            int affected = count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            results.add("Inserted " + affected + " row(s).");
+        }
+        return results;
+    }
+
+    // Table plus ordered column list; inserts with the same shape share SQL.
+    // Null for a block without well-formed values, which then runs alone and
+    // fails there under its own block number.
+    private static String insertShape(Map<String, Object> block) {
+        if (!(block.get("values") instanceof List<?> values) || values.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder().append(block.get("table"));
+        for (Object value : values) {
+            if (!(value instanceof Map<?, ?> entry)) {
+                return null;
+            }
+            sb.append('\u0000').append(entry.get("col"));
+        }
+        return sb.toString();
+    }
 
+    private String insertSql(String tableName, List<String> columns) {
+        return templates.get(new SqlTemplateCache.Key("insert", tableName, columns, null),
+                () -> buildInsertSql(tableName, columns));
+    }
+
+    static String buildInsertSql(String tableName, List<String> columns) {
         StringBuilder sbCols = new StringBuilder();
         StringBuilder sbPlaceholders = new StringBuilder();
-        List<Object> args = new ArrayList<>();
 
-        for (int i = 0; i < values.size(); i++) {
+        for (int i = 0; i < columns.size(); i++) {
             if (i > 0) {
                 sbCols.append(", ");
                 sbPlaceholders.append(", ");
             }
-            sbCols.append("`").append(values.get(i).get("col")).append("`");
+            sbCols.append(SqlTemplateCache.quote(columns.get(i)));
             sbPlaceholders.append("?");
-            args.add(values.get(i).get("val"));
         }
 
-        String sql = "INSERT INTO `" + tableName + "` (" + sbCols + ") VALUES (" + sbPlaceholders + ")";
-        int affected = jdbcTemplate.update(sql, args.toArray());
-        return "Inserted " + affected + " row(s).";
+        return "INSERT INTO " + SqlTemplateCache.quote(tableName) + " (" + sbCols + ") VALUES (" + sbPlaceholders + ")";
     }
 
-    private List<Map<String, Object>> selectRows(Map<String, Object> payload) {
+    private Object selectRows(Map<String, Object> payload) {
+        String dbName = (String) payload.get("dbName");
         String tableName = (String) payload.get("table");
         String filterCol = (String) payload.get("filterCol");
         String filterVal = (String) payload.get("filterVal");
 
+        if (payload.get("pageSize") != null) {
+            return selectPage(payload);
+        }
+
         if (filterCol != null && !filterCol.isBlank()) {
-            return jdbcTemplate.queryForList("SELECT * FROM `" + tableName + "` WHERE `" + filterCol + "` = ?",
-                    filterVal);
+            String sql = templates.get(new SqlTemplateCache.Key("select", tableName, List.of(), filterCol),
+                    () -> buildSelectSql(tableName, filterCol));
+            long started = System.nanoTime();
+            List<Map<String, Object>> rows = slowQueryLog.time("block_select", dbName, sql,
+                    new Object[] { filterVal }, () -> jdbcTemplate.queryForList(sql, filterVal));
+            indexAdvisor.record(dbName, tableName, filterCol, System.nanoTime() - started);
+            return tenantLimits.cap(dbName, rows);
         } else {
-            return jdbcTemplate.queryForList("SELECT * FROM `" + tableName + "`");
+            String sql = templates.get(new SqlTemplateCache.Key("select", tableName, List.of(), null),
+                    () -> buildSelectSql(tableName, null));
+            return tenantLimits.cap(dbName, slowQueryLog.time("block_select", dbName, sql, null,
+                    () -> jdbcTemplate.queryForList(sql)));
+        }
+    }
+
+    // A select block written straight from the ResultSet to the sink, for
+    // the streamed formats. Paged selects are not streamed: a page is
+    // already small, and it needs its last id back.
+    public void streamSelect(Map<String, Object> payload, RowSink sink) throws IOException {
+        String dbName = (String) payload.get("dbName");
+        String tableName = (String) payload.get("table");
+        String filterCol = (String) payload.get("filterCol");
+
+        boolean hasFilter = filterCol != null && !filterCol.isBlank();
+        String sql = templates.get(new SqlTemplateCache.Key("select", tableName, List.of(), hasFilter ? filterCol : null),
+                () -> buildSelectSql(tableName, hasFilter ? filterCol : null));
+        Object[] args = hasFilter ? new Object[] { payload.get("filterVal") } : new Object[0];
+        long started = System.nanoTime();
+        queryStreamer.stream(dbName, sql, args, sink);
+        if (hasFilter) {
+            // Includes the time spent writing to the client, as for any
+            // streamed result; a scan still dominates on an unindexed column
+            indexAdvisor.record(dbName, tableName, filterCol, System.nanoTime() - started);
+        }
+    }
+
+    static String buildSelectSql(String tableName, String filterCol) {
+        if (filterCol == null) {
+            return "SELECT * FROM " + SqlTemplateCache.quote(tableName);
+        }
+        return "SELECT * FROM " + SqlTemplateCache.quote(tableName) + " WHERE " + SqlTemplateCache.quote(filterCol) + " = ?";
+    }
+
+    // Keyset paging on the id primary key every block table is created with:
+    // WHERE id > afterId ORDER BY id LIMIT pageSize, so a page costs the same
+    // however deep into the table it is.
+    private Map<String, Object> selectPage(Map<String, Object> payload) {
+        String dbName = (String) payload.get("dbName");
+        String tableName = (String) payload.get("table");
+        String filterCol = (String) payload.get("filterCol");
+        String filterVal = (String) payload.get("filterVal");
+        Long pageSize = toLong(payload.get("pageSize"));
+        Long afterId = toLong(payload.get("afterId"));
+
+        if (pageSize == null || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        boolean hasFilter = filterCol != null && !filterCol.isBlank();
+        List<Object> args = new ArrayList<>();
+        if (hasFilter) {
+            args.add(filterVal);
+        }
+        if (afterId != null) {
+            args.add(afterId);
+        }
+        args.add(pageSize);
+
+        String type = afterId != null ? "select_page_after" : "select_page";
+        String sql = templates.get(new SqlTemplateCache.Key(type, tableName, List.of(), hasFilter ? filterCol : null), () -> {
+            StringBuilder sb = new StringBuilder();
+            sb.append("SELECT * FROM ").append(SqlTemplateCache.quote(tableName)).append(" WHERE 1 = 1");
+            if (hasFilter) {
+                sb.append(" AND ").append(SqlTemplateCache.quote(filterCol)).append(" = ?");
+            }
+            if (afterId != null) {
+                sb.append(" AND id > ?");
+            }
+            sb.append(" ORDER BY id LIMIT ?");
+            return sb.toString();
+        });
+
+        Object[] argArray = args.toArray();
+        long started = System.nanoTime();
+        List<Map<String, Object>> rows = tenantLimits.cap(dbName, slowQueryLog.time("block_select", dbName, sql,
+                argArray, () -> jdbcTemplate.queryForList(sql, argArray)));
+        if (hasFilter) {
+            indexAdvisor.record(dbName, tableName, filterCol, System.nanoTime() - started);
+        }
+
+        // A short page means we reached the end, unless the byte cap cut it
+        boolean more = rows.size() == pageSize || (rows instanceof CappedRows && !rows.isEmpty());
+        Object nextAfterId = more ? rows.get(rows.size() - 1).get("id") : null;
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("rows", rows);
+        page.put("nextAfterId", nextAfterId);
+        return page;
+    }
+
+    private static Long toLong(Object value) {
+        if (value == null || "".equals(value)) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number but got: " + value);
         }
     }
 
@@ -99,8 +368,13 @@ public class BlockSqlService {
         String filterCol = (String) payload.get("filterCol");
         String filterVal = (String) payload.get("filterVal");
 
-        String sql = "UPDATE `" + tableName + "` SET `" + colToUpdate + "` = ? WHERE `" + filterCol + "` = ?";
-        int affected = jdbcTemplate.update(sql, newValue, filterVal);
+        String sql = templates.get(new SqlTemplateCache.Key("update", tableName, Collections.singletonList(colToUpdate), filterCol),
+                () -> buildUpdateSql(tableName, colToUpdate, filterCol));
+        String dbName = (String) payload.get("dbName");
+        long started = System.nanoTime();
+        int affected = slowQueryLog.time("block_update", dbName, sql,
+                new Object[] { newValue, filterVal }, () -> jdbcTemplate.update(sql, newValue, filterVal));
+        indexAdvisor.record(dbName, tableName, filterCol, System.nanoTime() - started);
         return "Updated " + affected + " row(s).";
     }
 
@@ -109,8 +383,22 @@ public class BlockSqlService {
         String filterCol = (String) payload.get("filterCol");
         String filterVal = (String) payload.get("filterVal");
 
-        String sql = "DELETE FROM `" + tableName + "` WHERE `" + filterCol + "` = ?";
-        int affected = jdbcTemplate.update(sql, filterVal);
+        String sql = templates.get(new SqlTemplateCache.Key("delete", tableName, List.of(), filterCol),
+                () -> buildDeleteSql(tableName, filterCol));
+        String dbName = (String) payload.get("dbName");
+        long started = System.nanoTime();
+        int affected = slowQueryLog.time("block_delete", dbName, sql,
+                new Object[] { filterVal }, () -> jdbcTemplate.update(sql, filterVal));
+        indexAdvisor.record(dbName, tableName, filterCol, System.nanoTime() - started);
         return "Deleted " + affected + " row(s).";
     }
+
+    static String buildUpdateSql(String tableName, String colToUpdate, String filterCol) {
+        return "UPDATE " + SqlTemplateCache.quote(tableName) + " SET " + SqlTemplateCache.quote(colToUpdate)
+                + " = ? WHERE " + SqlTemplateCache.quote(filterCol) + " = ?";
+    }
+
+    static String buildDeleteSql(String tableName, String filterCol) {
+        return "DELETE FROM " + SqlTemplateCache.quote(tableName) + " WHERE " + SqlTemplateCache.quote(filterCol) + " = ?";
+    }
 }
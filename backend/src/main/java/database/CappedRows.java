@@ -0,0 +1,26 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A result cut short at a tenant's row or byte cap. It serializes as the plain
+// row list; SqlController reports the cut with a 206 and X-Result-Truncated.
+public class CappedRows extends ArrayList<Map<String, Object>> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String HEADER = "X-Result-Truncated";
+
+    private final String limit;
+
+    public CappedRows(List<Map<String, Object>> rows, String limit) {
+        super(rows);
+        this.limit = limit;
+    }
+
+    // "max-rows" or "max-bytes"
+    public String getLimit() {
+        return limit;
+    }
+}
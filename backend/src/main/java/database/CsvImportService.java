@@ -0,0 +1,157 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class CsvImportService {
+
+    private static final int BATCH_SIZE = 2000;
+    private static final int MAX_REPORTED_REJECTS = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SchemaService schemaService;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Streams a CSV into an existing block table. The header row names the
+    // columns; rows go in through batched INSERTs (multi-row once the driver
+    // rewrites them), one batch in memory at a time. Empty fields load as NULL.
+    public Map<String, Object> importCsv(String dbName, String tableName, Reader reader) throws IOException {
+        long started = System.nanoTime();
+        CsvReader csv = new CsvReader(reader);
+
+        List<String> header = csv.next();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV is empty");
+        }
+        List<String> columns = resolveColumns(dbName, tableName, header);
+        String sql = BlockSqlService.buildInsertSql(tableName, columns);
+
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        List<Long> batchLines = new ArrayList<>(BATCH_SIZE);
+        ImportStats stats = new ImportStats();
+
+        try {
+            List<String> record;
+            while ((record = csv.next()) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+                if (record.size() != columns.size()) {
+                    stats.reject(csv.getRecordLine(),
+                            "Expected " + columns.size() + " fields but found " + record.size());
+                    continue;
+                }
+
+                Object[] args = new Object[record.size()];
+                for (int i = 0; i < args.length; i++) {
+                    String value = record.get(i);
+                    args[i] = value.isEmpty() ? null : value;
+                }
+                batch.add(args);
+                batchLines.add(csv.getRecordLine());
+
+                if (batch.size() == BATCH_SIZE) {
+                    flush(sql, batch, batchLines, stats);
+                }
+            }
+            flush(sql, batch, batchLines, stats);
+        } finally {
+            // Rows already written stay written, even if parsing fails later
+            resultCache.invalidate(dbName);
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("table", tableName);
+        report.put("rowsImported", stats.imported);
+        report.put("rowsRejected", stats.rejected);
+        report.put("rejectedLines", stats.rejectedLines);
+        report.put("elapsedMs", elapsedMs);
+        report.put("rowsPerSecond", stats.imported * 1000 / elapsedMs);
+        return report;
+    }
+
+    // Maps header names onto the table's columns, ignoring case
+    private List<String> resolveColumns(String dbName, String tableName, List<String> header) {
+        Map<String, Object> table = (Map<String, Object>) schemaService.getSchema(dbName).get(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown table: " + tableName);
+        }
+
+        Map<String, String> known = new HashMap<>();
+        for (Map<String, Object> col : (List<Map<String, Object>>) table.get("columns")) {
+            String name = (String) col.get("name");
+            known.put(name.toLowerCase(), name);
+        }
+
+        List<String> columns = new ArrayList<>(header.size());
+        for (String name : header) {
+            String column = known.get(name.trim().toLowerCase());
+            if (column == null) {
+                throw new IllegalArgumentException("Table '" + tableName + "' has no column '" + name + "'");
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    private void flush(String sql, List<Object[]> batch, List<Long> batchLines, ImportStats stats) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            // In its own transaction: with autocommit, a rewritten batch could
+            // have committed some of its multi-row INSERTs before failing
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+            stats.imported += batch.size();
+        } catch (DataAccessException e) {
+            // Nothing of the batch is left after the rollback, so replay it row
+            // by row to find the offending lines and keep the rest
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    jdbcTemplate.update(sql, batch.get(i));
+                    stats.imported++;
+                } catch (DataAccessException rowError) {
+                    stats.reject(batchLines.get(i), rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private static class ImportStats {
+        long imported;
+        long rejected;
+        final List<Map<String, Object>> rejectedLines = new ArrayList<>();
+
+        void reject(long line, String error) {
+            rejected++;
+            if (rejectedLines.size() < MAX_REPORTED_REJECTS) {
+                rejectedLines.add(Map.of("line", line, "error", String.valueOf(error)));
+            }
+        }
+    }
+}
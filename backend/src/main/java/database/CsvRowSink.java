@@ -0,0 +1,85 @@
+package database;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+// RFC 4180 CSV with a header row; NULL is written as an empty field.
+public class CsvRowSink implements RowSink {
+
+    private final Writer out;
+    private int columnCount;
+
+    public CsvRowSink(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public void begin(ResultSetMetaData meta) throws SQLException, IOException {
+        columnCount = meta.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            if (i > 1) {
+                out.write(',');
+            }
+            writeField(JdbcUtils.lookupColumnName(meta, i));
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        for (int i = 1; i <= columnCount; i++) {
+            if (i > 1) {
+                out.write(',');
+            }
+            String value = rs.getString(i);
+            if (value != null) {
+                writeField(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        out.write("ERROR: ");
+        out.write(message);
+        out.write("\r\n");
+        out.flush();
+    }
+
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,50 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+@Configuration
+public class DataSourceConfig {
+
+    // Wraps the auto-configured Hikari pool so the JdbcTemplate and the
+    // transaction manager both hand out tenant-bound connections, behind a
+    // limiter on how many threads may hold one at a time.
+    @Bean
+    public static BeanPostProcessor tenantRoutingPostProcessor(
+            @Value("${app.datasource.control-catalog:new_project}") String controlCatalog,
+            @Value("${app.jdbc.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+            @Value("${app.jdbc.acquire-timeout:30s}") Duration acquireTimeout) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BoundedDataSource)) {
+                    return new BoundedDataSource(new TenantRoutingDataSource(dataSource, controlCatalog),
+                            maxConcurrency, acquireTimeout.toMillis());
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Replaces the auto-configured template so statements run for a tenant
+    // pick up its timeout and row cap, and can be cancelled by query id
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, TenantLimits tenantLimits, QueryRegistry queryRegistry) {
+        return new JdbcTemplate(dataSource) {
+            @Override
+            protected void applyStatementSettings(Statement stmt) throws SQLException {
+                super.applyStatementSettings(stmt);
+                tenantLimits.apply(stmt);
+                queryRegistry.attach(stmt);
+            }
+        };
+    }
+}
@@ -0,0 +1,300 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Block tables only get the id primary key, so every filtered select, update
+// and delete is a full scan. This watches which (table, filterCol) pairs each
+// tenant filters on and how long those statements take, and suggests a
+// secondary index once a pair is used often enough and is slow enough.
+// Tenants that opt in get the index built in the background, one at a time
+// across the server; TEXT and BLOB columns are indexed on a prefix. After
+// an index exists its latency keeps being recorded, so the listing shows
+// the before and after averages.
+@Component
+public class IndexAdvisor {
+
+    // EXISTING: someone else indexed the column first; nothing to suggest
+    public enum State { OBSERVED, CREATING, CREATED, FAILED, EXISTING }
+
+    private static final class Usage {
+        final String dbName;
+        final String table;
+        final String column;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final Instant firstSeen = Instant.now();
+        volatile State state = State.OBSERVED;
+        volatile String error;
+        volatile Instant createdAt;
+        // Totals frozen once the index is in, to compare against
+        volatile long countBefore;
+        volatile long nanosBefore;
+
+        Usage(String dbName, String table, String column) {
+            this.dbName = dbName;
+            this.table = table;
+            this.column = column;
+        }
+
+        double avgMs(long count, long nanos) {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+    }
+
+    // Quoted identifiers may contain any character, '/' included, so keys are
+    // records rather than joined strings. Names are compared case-folded.
+    private record ColumnKey(String table, String column) {
+        static ColumnKey of(String table, String column) {
+            return new ColumnKey(table.toLowerCase(), column.toLowerCase());
+        }
+    }
+
+    private record UsageKey(String dbName, ColumnKey column) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SchemaService schemaService;
+
+    private final Map<UsageKey, Usage> usage = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> entriesPerTenant = new ConcurrentHashMap<>();
+    private final Set<String> autoCreate = ConcurrentHashMap.newKeySet();
+    private final ExecutorService builder;
+    private final long minCount;
+    private final long minAvgNanos;
+    private final int prefixLength;
+    private final int maxEntries;
+
+    public IndexAdvisor(@Value("${app.index-advisor.min-count:20}") long minCount,
+            @Value("${app.index-advisor.min-avg-latency:20ms}") Duration minAvgLatency,
+            @Value("${app.index-advisor.prefix-length:64}") int prefixLength,
+            @Value("${app.index-advisor.max-entries-per-tenant:500}") int maxEntries) {
+        this.minCount = minCount;
+        this.minAvgNanos = minAvgLatency.toNanos();
+        this.prefixLength = prefixLength;
+        this.maxEntries = maxEntries;
+        this.builder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "index-advisor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Called by BlockSqlService after each filtered statement, with valid
+    // identifiers. A tenant's pairs past maxEntries are not tracked, so one
+    // tenant filtering on endless columns cannot crowd out the others.
+    public void record(String dbName, String table, String column, long nanos) {
+        if (dbName == null) {
+            return;
+        }
+        UsageKey key = new UsageKey(dbName, ColumnKey.of(table, column));
+        Usage entry = usage.get(key);
+        if (entry == null) {
+            AtomicInteger tracked = entriesPerTenant.computeIfAbsent(dbName, k -> new AtomicInteger());
+            if (tracked.get() >= maxEntries) {
+                return;
+            }
+            entry = usage.computeIfAbsent(key, k -> {
+                tracked.incrementAndGet();
+                return new Usage(dbName, table, column);
+            });
+        }
+        entry.count.increment();
+        entry.totalNanos.add(nanos);
+        entry.maxNanos.accumulate(nanos);
+
+        if (entry.state == State.OBSERVED && autoCreate.contains(dbName) && qualifies(entry)) {
+            schedule(entry);
+        }
+    }
+
+    public void setAutoCreate(String dbName, boolean enabled) {
+        if (enabled) {
+            autoCreate.add(dbName);
+            // Build whatever already qualifies
+            for (Usage entry : usage.values()) {
+                if (entry.dbName.equals(dbName) && entry.state == State.OBSERVED && qualifies(entry)) {
+                    schedule(entry);
+                }
+            }
+        } else {
+            autoCreate.remove(dbName);
+        }
+    }
+
+    // Suggestions first, most time spent first, then indexes already built
+    public Map<String, Object> suggestions(String dbName) {
+        Set<ColumnKey> indexed = indexedColumns(dbName);
+        Map<ColumnKey, String> types = null;
+        List<Usage> entries = new ArrayList<>();
+        for (Usage entry : usage.values()) {
+            if (entry.dbName.equals(dbName)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing((Usage e) -> e.state != State.OBSERVED)
+                .thenComparing(e -> -e.totalNanos.sum()));
+
+        List<Map<String, Object>> suggested = new ArrayList<>();
+        List<Map<String, Object>> built = new ArrayList<>();
+        for (Usage entry : entries) {
+            boolean hasIndex = indexed.contains(ColumnKey.of(entry.table, entry.column));
+            if (entry.state == State.EXISTING
+                    || entry.state == State.OBSERVED && (hasIndex || !qualifies(entry))) {
+                continue;
+            }
+
+            long count = entry.count.sum();
+            long nanos = entry.totalNanos.sum();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("table", entry.table);
+            item.put("column", entry.column);
+            item.put("state", entry.state);
+            if (types == null) {
+                types = columnTypes(dbName);
+            }
+            item.put("ddl", createIndexSql(entry, types.get(ColumnKey.of(entry.table, entry.column))));
+            if (entry.state == State.OBSERVED) {
+                item.put("uses", count);
+                item.put("avgMs", entry.avgMs(count, nanos));
+                item.put("maxMs", entry.maxNanos.get() / 1e6);
+                // What an index could save at most: the time these statements took
+                item.put("totalMs", nanos / 1e6);
+                item.put("since", entry.firstSeen.toString());
+                suggested.add(item);
+            } else {
+                long countAfter = count - entry.countBefore;
+                long nanosAfter = nanos - entry.nanosBefore;
+                double before = entry.avgMs(entry.countBefore, entry.nanosBefore);
+                double after = entry.avgMs(countAfter, nanosAfter);
+                item.put("usesBefore", entry.countBefore);
+                item.put("avgMsBefore", before);
+                item.put("usesAfter", countAfter);
+                item.put("avgMsAfter", countAfter == 0 ? null : after);
+                item.put("speedup", countAfter == 0 || after == 0 ? null : before / after);
+                if (entry.createdAt != null) {
+                    item.put("createdAt", entry.createdAt.toString());
+                }
+                if (entry.error != null) {
+                    item.put("error", entry.error);
+                }
+                built.add(item);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("autoCreate", autoCreate.contains(dbName));
+        result.put("minUses", minCount);
+        result.put("minAvgMs", minAvgNanos / 1e6);
+        result.put("suggestions", suggested);
+        result.put("created", built);
+        return result;
+    }
+
+    private boolean qualifies(Usage entry) {
+        long count = entry.count.sum();
+        return count >= minCount && entry.totalNanos.sum() / count >= minAvgNanos;
+    }
+
+    private void schedule(Usage entry) {
+        synchronized (entry) {
+            if (entry.state != State.OBSERVED) {
+                return;
+            }
+            entry.state = State.CREATING;
+        }
+        builder.execute(() -> build(entry));
+    }
+
+    // Runs on the control connection, not the tenant's, so the tenant
+    // statement timeout does not cut a long build short. MySQL builds
+    // secondary indexes online, so the table stays usable meanwhile.
+    private void build(Usage entry) {
+        try {
+            ColumnKey column = ColumnKey.of(entry.table, entry.column);
+            if (indexedColumns(entry.dbName).contains(column)) {
+                entry.state = State.EXISTING;
+                return;
+            }
+            String type = columnTypes(entry.dbName).get(column);
+            if (type == null) {
+                throw new IllegalStateException("Column " + entry.table + "." + entry.column + " no longer exists");
+            }
+            jdbcTemplate.execute(createIndexSql(entry, type));
+            // Statements that ran during the build still scanned, so they count as before
+            entry.countBefore = entry.count.sum();
+            entry.nanosBefore = entry.totalNanos.sum();
+            entry.createdAt = Instant.now();
+            entry.state = State.CREATED;
+            schemaService.invalidate(entry.dbName);
+        } catch (Exception e) {
+            entry.error = e.getMessage();
+            entry.state = State.FAILED;
+        }
+    }
+
+    private String createIndexSql(Usage entry, String type) {
+        String name = "ix_" + entry.column;
+        if (name.length() > 64) {
+            name = name.substring(0, 64).stripTrailing();
+        }
+        String column = SqlTemplateCache.quote(entry.column);
+        if (type != null && (type.endsWith("text") || type.endsWith("blob"))) {
+            column += "(" + prefixLength + ")";
+        }
+        return "CREATE INDEX " + SqlTemplateCache.quote(name) + " ON " + SqlTemplateCache.quote(entry.dbName) + "."
+                + SqlTemplateCache.quote(entry.table) + " (" + column + ")";
+    }
+
+    // Tables and columns that already lead an index
+    private Set<ColumnKey> indexedColumns(String dbName) {
+        Set<ColumnKey> indexed = new HashSet<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.STATISTICS " +
+                        "WHERE TABLE_SCHEMA = ? AND SEQ_IN_INDEX = 1", dbName)) {
+            indexed.add(ColumnKey.of(String.valueOf(row.get("TABLE_NAME")), String.valueOf(row.get("COLUMN_NAME"))));
+        }
+        return indexed;
+    }
+
+    // Every column's DATA_TYPE in one query
+    private Map<ColumnKey, String> columnTypes(String dbName) {
+        Map<ColumnKey, String> types = new HashMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = ?", dbName)) {
+            types.put(ColumnKey.of(String.valueOf(row.get("TABLE_NAME")), String.valueOf(row.get("COLUMN_NAME"))),
+                    String.valueOf(row.get("DATA_TYPE")).toLowerCase());
+        }
+        return types;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package database;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+// MessagePack, as a sequence of top-level values rather than one document,
+// since a MessagePack array needs its length before the first element:
+//
+//   {"columns": [{"name", "type"}, ...]}  [row values]*  {"rows": count} | {"error": message}
+//
+// Integers, floats and booleans keep their MessagePack types, binary
+// columns are bin, and everything else (DECIMAL, dates, text) is the
+// driver's string form, so no precision is lost.
+public class MsgpackRowSink implements RowSink {
+
+    private static final int FLUSH_EVERY = 256;
+
+    private static final int KIND_LONG = 0;
+    private static final int KIND_DOUBLE = 1;
+    private static final int KIND_BOOLEAN = 2;
+    private static final int KIND_BINARY = 3;
+    private static final int KIND_BIG = 4;
+    private static final int KIND_FLOAT = 5;
+    private static final int KIND_STRING = 6;
+
+    private final MessagePacker packer;
+    private int[] kinds;
+    private Object[] values;
+    private long rows;
+    private boolean finished;
+
+    public MsgpackRowSink(OutputStream out) {
+        this.packer = MessagePack.newDefaultPacker(out);
+    }
+
+    @Override
+    public void begin(ResultSetMetaData meta) throws SQLException, IOException {
+        kinds = new int[meta.getColumnCount()];
+        values = new Object[kinds.length];
+        packer.packMapHeader(1);
+        packer.packString("columns");
+        packer.packArrayHeader(kinds.length);
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = kindOf(meta, i + 1);
+            packer.packMapHeader(2);
+            packer.packString("name");
+            packer.packString(JdbcUtils.lookupColumnName(meta, i + 1));
+            packer.packString("type");
+            packer.packString(meta.getColumnTypeName(i + 1));
+        }
+    }
+
+    // Values are read before the array header goes out, so a failing column
+    // never leaves a half-written row in the stream
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        readRow(rs);
+        packer.packArrayHeader(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                packer.packNil();
+                continue;
+            }
+            switch (kinds[i]) {
+                case KIND_LONG -> packer.packLong((Long) value);
+                case KIND_DOUBLE -> packer.packDouble((Double) value);
+                case KIND_FLOAT -> packer.packFloat((Float) value);
+                case KIND_BOOLEAN -> packer.packBoolean((Boolean) value);
+                case KIND_BIG -> packer.packBigInteger((BigInteger) value);
+                case KIND_BINARY -> {
+                    byte[] bytes = (byte[]) value;
+                    packer.packBinaryHeader(bytes.length);
+                    packer.writePayload(bytes);
+                }
+                default -> packer.packString((String) value);
+            }
+        }
+
+        // First row goes out immediately, the rest in chunks
+        rows++;
+        if (rows == 1 || rows % FLUSH_EVERY == 0) {
+            packer.flush();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        packer.packMapHeader(1);
+        packer.packString("rows");
+        packer.packLong(rows);
+        packer.flush();
+        finished = true;
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        if (finished) {
+            return;
+        }
+        message(packer, "error", message);
+        packer.flush();
+        finished = true;
+    }
+
+    // Result of a statement that returns no rows, e.g. {"message": "3 rows affected"}
+    public static void writeMessage(OutputStream out, Object message) throws IOException {
+        MessagePacker packer = MessagePack.newDefaultPacker(out);
+        message(packer, "message", String.valueOf(message));
+        packer.flush();
+    }
+
+    private static void message(MessagePacker packer, String key, String value) throws IOException {
+        packer.packMapHeader(1);
+        packer.packString(key);
+        packer.packString(value);
+    }
+
+    private void readRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < kinds.length; i++) {
+            Object value = switch (kinds[i]) {
+                case KIND_LONG -> rs.getLong(i + 1);
+                case KIND_DOUBLE -> rs.getDouble(i + 1);
+                case KIND_FLOAT -> rs.getFloat(i + 1);
+                case KIND_BOOLEAN -> rs.getBoolean(i + 1);
+                case KIND_BINARY -> rs.getBytes(i + 1);
+                case KIND_BIG -> {
+                    BigDecimal big = rs.getBigDecimal(i + 1);
+                    yield big == null ? null : big.toBigInteger();
+                }
+                default -> rs.getString(i + 1);
+            };
+            values[i] = rs.wasNull() ? null : value;
+        }
+    }
+
+    private static int kindOf(ResultSetMetaData meta, int column) throws SQLException {
+        switch (meta.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return KIND_LONG;
+            // UNSIGNED values can pass Long.MAX_VALUE; MessagePack has uint64 for them
+            case Types.BIGINT:
+                return meta.isSigned(column) ? KIND_LONG : KIND_BIG;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return KIND_DOUBLE;
+            // MySQL FLOAT
+            case Types.REAL:
+                return KIND_FLOAT;
+            case Types.BOOLEAN:
+                return KIND_BOOLEAN;
+            case Types.BIT:
+                return meta.getPrecision(column) <= 1 ? KIND_BOOLEAN : KIND_BINARY;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return KIND_BINARY;
+            default:
+                return KIND_STRING;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package database;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+// Writes one JSON object per row, newline separated.
+public class NdjsonRowSink implements RowSink {
+
+    private static final int FLUSH_EVERY = 256;
+
+    private final JsonGenerator gen;
+    private String[] labels;
+    private long rows;
+
+    public NdjsonRowSink(ObjectMapper mapper, OutputStream out) throws IOException {
+        this.gen = mapper.createGenerator(out);
+    }
+
+    @Override
+    public void begin(ResultSetMetaData meta) throws SQLException {
+        labels = new String[meta.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = JdbcUtils.lookupColumnName(meta, i + 1);
+        }
+    }
+
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        gen.writeStartObject();
+        for (int i = 0; i < labels.length; i++) {
+            gen.writeFieldName(labels[i]);
+            gen.writeObject(JdbcUtils.getResultSetValue(rs, i + 1));
+        }
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+
+        // First row goes out immediately, the rest in chunks
+        rows++;
+        if (rows == 1 || rows % FLUSH_EVERY == 0) {
+            gen.flush();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        gen.flush();
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("error", message);
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+        gen.flush();
+    }
+}
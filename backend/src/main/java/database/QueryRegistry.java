@@ -0,0 +1,161 @@
+package database;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Every statement a request runs for a tenant, keyed by tenant and query id,
+// so it can be listed and cancelled from another request. The JdbcTemplate
+// attaches each Statement it creates to the query running on that thread.
+@Component
+public class QueryRegistry {
+
+    public static final String ID_HEADER = "X-Query-Id";
+
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final int MAX_SQL_SHOWN = 500;
+
+    private final Map<String, RunningQuery> queries = new ConcurrentHashMap<>();
+    private final ThreadLocal<RunningQuery> current = new ThreadLocal<>();
+
+    public static final class RunningQuery {
+        private final String id;
+        private final String dbName;
+        private final String sql;
+        private final Instant startedAt = Instant.now();
+        private Statement statement;
+        private boolean cancelled;
+        private boolean finished;
+
+        RunningQuery(String id, String dbName, String sql) {
+            this.id = id;
+            this.dbName = dbName;
+            this.sql = sql;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    // The client may pick the id (X-Query-Id) so it can cancel a request it
+    // is still waiting on; otherwise one is generated.
+    public RunningQuery register(String dbName, String requestedId, String sql) {
+        String id = requestedId;
+        if (id == null || id.isBlank()) {
+            id = UUID.randomUUID().toString();
+        } else if (!VALID_ID.matcher(id).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid query id: " + id);
+        }
+        RunningQuery query = new RunningQuery(id, dbName, sql == null ? "" : sql);
+        if (queries.putIfAbsent(key(dbName, id), query) != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Query id already running: " + id);
+        }
+        return query;
+    }
+
+    // Binds the query to the calling thread, which is the one that will run it
+    public void enter(RunningQuery query) {
+        current.set(query);
+    }
+
+    // Safe to call more than once, and from a thread other than the runner
+    public void finish(RunningQuery query) {
+        current.remove();
+        synchronized (query) {
+            query.finished = true;
+            query.statement = null;
+        }
+        queries.remove(key(query.dbName, query.id), query);
+    }
+
+    // Called for every statement the thread creates. A query cancelled
+    // between statements (in a batch or script) stops at the next one.
+    public void attach(Statement stmt) throws SQLException {
+        RunningQuery query = current.get();
+        if (query == null) {
+            return;
+        }
+        synchronized (query) {
+            query.statement = stmt;
+        }
+        checkCancelled(query);
+    }
+
+    public boolean cancel(String dbName, String id) {
+        RunningQuery query = queries.get(key(dbName, id));
+        if (query == null) {
+            return false;
+        }
+        cancel(query);
+        return true;
+    }
+
+    // Statement.cancel makes Connector/J send KILL QUERY for the statement's
+    // connection, and only while that statement is executing, so a stale
+    // Statement cannot kill whatever its pooled connection runs next.
+    public void cancel(RunningQuery query) {
+        synchronized (query) {
+            if (query.finished) {
+                return;
+            }
+            query.cancelled = true;
+            if (query.statement != null) {
+                try {
+                    query.statement.cancel();
+                } catch (SQLException ignored) {
+                    // Already closed or finished
+                }
+            }
+        }
+    }
+
+    public List<Map<String, Object>> running(String dbName) {
+        long now = System.currentTimeMillis();
+        List<RunningQuery> matching = new ArrayList<>();
+        for (RunningQuery query : queries.values()) {
+            if (query.dbName.equals(dbName)) {
+                matching.add(query);
+            }
+        }
+        matching.sort(Comparator.comparing(query -> query.startedAt));
+
+        List<Map<String, Object>> result = new ArrayList<>(matching.size());
+        for (RunningQuery query : matching) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", query.id);
+            entry.put("sql", query.sql.length() > MAX_SQL_SHOWN ? query.sql.substring(0, MAX_SQL_SHOWN) + "..." : query.sql);
+            entry.put("startedAt", query.startedAt.toString());
+            entry.put("elapsedMs", now - query.startedAt.toEpochMilli());
+            entry.put("cancelled", query.isCancelled());
+            result.add(entry);
+        }
+        return result;
+    }
+
+    private static void checkCancelled(RunningQuery query) throws SQLException {
+        if (query.isCancelled()) {
+            throw new SQLException("Query " + query.id + " was cancelled");
+        }
+    }
+
+    private static String key(String dbName, String id) {
+        return dbName + "/" + id;
+    }
+}
@@ -0,0 +1,88 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.StatementCallback;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+@Service
+public class QueryStreamer {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    // Runs a row-returning statement and hands each row to the sink as the
+    // driver reads it, so memory stays flat whatever the result size. Writes
+    // block while the client is not reading, which in turn stops us pulling
+    // rows off the MySQL socket. The caller holds the tenant's permit, taken
+    // before the response is committed; the timeout applies, but not the row
+    // cap, since nothing is held in memory.
+    public void stream(String dbName, String sql, RowSink sink) throws IOException {
+        stream(dbName, sql, null, sink);
+    }
+
+    // Same, with ? placeholders bound from args (block selects)
+    public void stream(String dbName, String sql, Object[] args, RowSink sink) throws IOException {
+        TenantContext.set(dbName);
+        long started = System.nanoTime();
+        boolean ok = false;
+        int[] rows = new int[1];
+        try {
+            if (args == null) {
+                jdbcTemplate.execute((StatementCallback<Void>) stmt -> {
+                    prepare(stmt);
+                    return read(stmt, stmt.executeQuery(sql), sink, rows);
+                });
+            } else {
+                jdbcTemplate.execute(sql, (PreparedStatementCallback<Void>) ps -> {
+                    prepare(ps);
+                    new ArgumentPreparedStatementSetter(args).setValues(ps);
+                    return read(ps, ps.executeQuery(), sink, rows);
+                });
+            }
+            ok = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            sqlMetrics.record(SqlMetrics.kindTag(SqlLexer.classify(sql)), dbName, System.nanoTime() - started, ok, rows[0]);
+            TenantContext.clear();
+        }
+    }
+
+    private static void prepare(Statement stmt) throws SQLException {
+        // Connector/J only streams row by row with this fetch size
+        stmt.setFetchSize(Integer.MIN_VALUE);
+        stmt.setMaxRows(0);
+    }
+
+    private static Void read(Statement stmt, ResultSet rs, RowSink sink, int[] rows) throws SQLException {
+        try {
+            sink.begin(rs.getMetaData());
+            while (rs.next()) {
+                sink.row(rs);
+                rows[0]++;
+            }
+            sink.end();
+        } catch (IOException e) {
+            // Client went away. Kill the query before closing the result
+            // set, otherwise the driver drains every remaining row.
+            stmt.cancel();
+            throw new UncheckedIOException(e);
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+        }
+        return null;
+    }
+}
@@ -1,10 +1,19 @@
 package database;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -14,49 +23,187 @@ public class RawSqlService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SchemaService schemaService;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private TenantLimits tenantLimits;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
     @Transactional
     public Object executeRawSql(String sql, String dbName) {
-        String upperSql = sql.trim().toUpperCase();
+        // The connection is already bound to dbName by TenantRoutingDataSource
+        StatementKind kind = SqlLexer.classify(sql);
+        String tag = SqlMetrics.kindTag(kind);
+        return sqlMetrics.time(tag, dbName, () -> slowQueryLog.time(tag, dbName, sql, null, () -> execute(sql, dbName, kind)));
+    }
 
-        // Handle USE command specially - changes the session database
-        if (upperSql.startsWith("USE ")) {
-            jdbcTemplate.execute(sql);
-            return "Database changed.";
+    private Object execute(String sql, String dbName, StatementKind kind) {
+        if (SqlLexer.changesSession(sql)) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                TenantRoutingDataSource.markDirty(con);
+                return null;
+            });
         }
+        switch (kind) {
+            case EMPTY:
+                throw new IllegalArgumentException("No SQL statement to execute");
 
-        // Handle CREATE DATABASE / DROP DATABASE (don't need USE first)
-        if (upperSql.startsWith("CREATE DATABASE") || upperSql.startsWith("DROP DATABASE")) {
-            jdbcTemplate.execute(sql);
-            return "Command executed successfully.";
-        }
+            // USE changes the session database, for this statement's connection only
+            case USE:
+                jdbcTemplate.execute(sql);
+                return "Database changed.";
 
-        // Handle SHOW commands (queries that return results)
-        if (upperSql.startsWith("SHOW ")) {
-            // Switch database first for SHOW TABLES etc
-            if (upperSql.contains("TABLES") && dbName != null && !dbName.isEmpty()) {
-                jdbcTemplate.execute("USE `" + dbName + "`");
-            }
-            return jdbcTemplate.queryForList(sql);
-        }
+            case CREATE_DATABASE:
+            case DROP_DATABASE:
+                jdbcTemplate.execute(sql);
+                schemaService.invalidateAll();
+                resultCache.invalidateAll();
+                return "Command executed successfully.";
 
-        // Handle DESCRIBE / DESC commands
-        if (upperSql.startsWith("DESCRIBE ") || upperSql.startsWith("DESC ")) {
-            jdbcTemplate.execute("USE `" + dbName + "`");
-            return jdbcTemplate.queryForList(sql);
-        }
+            // SELECT, SHOW, DESCRIBE and EXPLAIN return rows
+            case SELECT:
+            case SHOW:
+            case DESCRIBE:
+            case EXPLAIN:
+                if (resultCache.isCacheable(kind, sql)) {
+                    return resultCache.get(dbName, sql, () -> tenantLimits.cap(dbName, jdbcTemplate.queryForList(sql)));
+                }
+                return tenantLimits.cap(dbName, jdbcTemplate.queryForList(sql));
 
-        // For all other commands, switch to user's database first
-        if (dbName != null && !dbName.isEmpty()) {
-            jdbcTemplate.execute("USE `" + dbName + "`");
+            // DDL/DML commands (CREATE TABLE, INSERT, UPDATE, DELETE, etc.)
+            default:
+                jdbcTemplate.execute(sql);
+                if (kind == StatementKind.DDL) {
+                    schemaService.invalidate(dbName);
+                }
+                resultCache.invalidate(dbName);
+                return "Query executed successfully.";
         }
+    }
+
+    // Script mode: splits the script and runs the statements in order on one
+    // connection, so session state (USE, variables, temporary tables) carries
+    // over between them. Each statement autocommits and reports its own
+    // result sets or update count and timing. Statements are created here
+    // rather than by the template, so the tenant limits and the query registry
+    // are applied by hand.
+    public List<Map<String, Object>> executeScript(String script, String dbName, boolean stopOnError) {
+        List<String> statements = SqlScriptSplitter.split(script);
+        RowMapperResultSetExtractor<Map<String, Object>> extractor =
+                new RowMapperResultSetExtractor<>(new ColumnMapRowMapper());
+        boolean[] schemaChanged = new boolean[1];
+        boolean[] databasesChanged = new boolean[1];
+        boolean[] wrote = new boolean[1];
+
+        List<Map<String, Object>> results = jdbcTemplate.execute((ConnectionCallback<List<Map<String, Object>>>) con -> {
+            List<Map<String, Object>> out = new ArrayList<>(statements.size());
+            for (int i = 0; i < statements.size(); i++) {
+                String sql = statements.get(i);
+                StatementKind kind = SqlLexer.classify(sql);
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("index", i + 1);
+                result.put("sql", sql);
+                result.put("kind", kind);
+                out.add(result);
+
+                // Whatever such a statement leaves in the session stays off the pool
+                if (SqlLexer.changesSession(sql)) {
+                    TenantRoutingDataSource.markDirty(con);
+                }
 
-        // SELECT and similar queries
-        if (upperSql.startsWith("SELECT")) {
-            return jdbcTemplate.queryForList(sql);
+                long started = System.nanoTime();
+                boolean ok = false;
+                int rowCount = 0;
+                try (Statement stmt = con.createStatement()) {
+                    tenantLimits.apply(stmt);
+                    queryRegistry.attach(stmt);
+                    List<Object> resultSets = new ArrayList<>();
+                    List<Integer> updateCounts = new ArrayList<>();
+
+                    // A statement such as CALL can yield several results
+                    boolean hasResultSet = stmt.execute(sql);
+                    while (true) {
+                        if (hasResultSet) {
+                            try (ResultSet rs = stmt.getResultSet()) {
+                                List<Map<String, Object>> rows = tenantLimits.cap(dbName, extractor.extractData(rs));
+                                if (rows instanceof CappedRows capped) {
+                                    result.put("truncated", capped.getLimit());
+                                }
+                                resultSets.add(rows);
+                                rowCount += rows.size();
+                            }
+                        } else {
+                            int count = stmt.getUpdateCount();
+                            if (count == -1) {
+                                break;
+                            }
+                            updateCounts.add(count);
+                        }
+                        hasResultSet = stmt.getMoreResults();
+                    }
+
+                    if (resultSets.size() == 1) {
+                        result.put("rows", resultSets.get(0));
+                    } else if (!resultSets.isEmpty()) {
+                        result.put("resultSets", resultSets);
+                    }
+                    if (!kind.returnsRows() && !updateCounts.isEmpty()) {
+                        result.put("updateCount", updateCounts.get(0));
+                    }
+                    if (kind == StatementKind.CREATE_DATABASE || kind == StatementKind.DROP_DATABASE) {
+                        databasesChanged[0] = true;
+                    } else if (kind.changesSchema()) {
+                        schemaChanged[0] = true;
+                    }
+                    if (!kind.returnsRows()) {
+                        wrote[0] = true;
+                    }
+                    ok = true;
+                } catch (SQLException e) {
+                    if (e instanceof SQLTimeoutException) {
+                        tenantLimits.recordTimeout(dbName);
+                    }
+                    result.put("error", e.getMessage());
+                    if (stopOnError) {
+                        break;
+                    }
+                } finally {
+                    long elapsed = System.nanoTime() - started;
+                    result.put("elapsedMs", elapsed / 1_000_000.0);
+                    sqlMetrics.record(SqlMetrics.kindTag(kind), dbName, elapsed, ok, rowCount);
+                    slowQueryLog.record(SqlMetrics.kindTag(kind), dbName, sql, null, elapsed, rowCount,
+                            ok ? null : String.valueOf(result.getOrDefault("error", "failed")));
+                }
+            }
+            return out;
+        });
+
+        // Same invalidation as single statements: only CREATE/DROP DATABASE
+        // reaches beyond this tenant
+        if (databasesChanged[0]) {
+            schemaService.invalidateAll();
+            resultCache.invalidateAll();
         } else {
-            // DDL/DML commands (CREATE TABLE, INSERT, UPDATE, DELETE, etc.)
-            jdbcTemplate.execute(sql);
-            return "Query executed successfully.";
+            if (schemaChanged[0]) {
+                schemaService.invalidate(dbName);
+            }
+            if (wrote[0]) {
+                resultCache.invalidate(dbName);
+            }
         }
+        return results;
     }
 }
@@ -0,0 +1,231 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// Byte-bounded LRU of read-only raw query results, keyed by tenant and
+// whitespace-normalized SQL. Any write on a tenant drops its entries.
+// Concurrent misses on the same key wait for a single execution.
+@Component
+public class ResultCache {
+
+    // Reads whose result can change without a write through this service
+    private static final Pattern VOLATILE = Pattern.compile(
+            "\\b(NOW|RAND|UUID|UUID_SHORT|SYSDATE|CURDATE|CURTIME|UNIX_TIMESTAMP|CONNECTION_ID"
+                    + "|LAST_INSERT_ID|FOUND_ROWS|ROW_COUNT|SLEEP|BENCHMARK|GET_LOCK|USER|SESSION_USER"
+                    + "|SYSTEM_USER|DATABASE|SCHEMA)\\s*\\("
+                    + "|\\b(CURRENT_\\w+|LOCALTIME\\w*|UTC_\\w+|INTO|FOR\\s+UPDATE|FOR\\s+SHARE|LOCK\\s+IN"
+                    + "|INFORMATION_SCHEMA|PERFORMANCE_SCHEMA)\\b|@",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CACHEABLE_SHOW = Pattern.compile(
+            "SHOW\\s+(FULL\\s+)?(TABLES|COLUMNS|FIELDS|INDEX|INDEXES|KEYS|CREATE\\s+TABLE)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private record Key(String dbName, String sql) {
+    }
+
+    private record Entry(List<Map<String, Object>> rows, long bytes) {
+    }
+
+    // A load is only shared with requests that saw the same generation, so
+    // one that began before a write is never handed to a request after it
+    private record Flight(Key key, long generation) {
+    }
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final Map<Flight, CompletableFuture<List<Map<String, Object>>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ResultCache(@Value("${app.result-cache.max-bytes:67108864}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isCacheable(StatementKind kind, String sql) {
+        if (maxBytes <= 0 || VOLATILE.matcher(sql).find()) {
+            return false;
+        }
+        if (kind == StatementKind.SHOW) {
+            return CACHEABLE_SHOW.matcher(sql.substring(SqlLexer.skipTrivia(sql, 0, sql.length(), true))).lookingAt();
+        }
+        return kind == StatementKind.SELECT || kind == StatementKind.DESCRIBE;
+    }
+
+    public List<Map<String, Object>> get(String dbName, String sql, Supplier<List<Map<String, Object>>> loader) {
+        Key key = new Key(dbName, normalize(sql));
+        long generation = generation(dbName).get();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.rows();
+            }
+        }
+
+        CompletableFuture<List<Map<String, Object>>> mine = new CompletableFuture<>();
+        Flight flight = new Flight(key, generation);
+        CompletableFuture<List<Map<String, Object>>> running = inFlight.putIfAbsent(flight, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            // A result cut at a tenant cap keeps its CappedRows type (and limit),
+            // so a hit is still reported as a 206 with X-Result-Truncated
+            List<Map<String, Object>> loaded = loader.get();
+            List<Map<String, Object>> rows = loaded instanceof CappedRows ? loaded : Collections.unmodifiableList(loaded);
+            put(key, rows, generation);
+            mine.complete(rows);
+            return rows;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flight, mine);
+        }
+    }
+
+    // Drops the tenant's entries once the current transaction finishes, so a
+    // read racing the write cannot re-cache the old rows before they commit
+    public void invalidate(String dbName) {
+        if (dbName == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow(dbName);
+                }
+            });
+        } else {
+            invalidateNow(dbName);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (this) {
+            generations.values().forEach(AtomicLong::incrementAndGet);
+            entries.clear();
+            totalBytes = 0;
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        synchronized (this) {
+            return Map.of(
+                    "hits", hits.get(),
+                    "misses", misses.get(),
+                    "coalesced", coalesced.get(),
+                    "evictions", evictions.get(),
+                    "invalidations", invalidations.get(),
+                    "entries", entries.size(),
+                    "bytes", totalBytes,
+                    "maxBytes", maxBytes);
+        }
+    }
+
+    private void invalidateNow(String dbName) {
+        synchronized (this) {
+            generation(dbName).incrementAndGet();
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (e.getKey().dbName().equals(dbName)) {
+                    totalBytes -= e.getValue().bytes();
+                    it.remove();
+                }
+            }
+        }
+        invalidations.incrementAndGet();
+    }
+
+    private synchronized void put(Key key, List<Map<String, Object>> rows, long generation) {
+        // A write landed while we were loading; these rows may already be stale
+        if (generation(key.dbName()).get() != generation) {
+            return;
+        }
+        long bytes = ResultSizes.estimate(rows) + 2L * key.sql().length();
+        if (bytes > maxBytes / 4) {
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(rows, bytes));
+        if (previous != null) {
+            totalBytes -= previous.bytes();
+        }
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private AtomicLong generation(String dbName) {
+        return generations.computeIfAbsent(dbName, k -> new AtomicLong());
+    }
+
+    // Collapses whitespace outside quotes and drops a trailing ';'
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                i++;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = SqlLexer.skipQuoted(sql, i, n, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        while (sb.length() > 0 && sb.charAt(sb.length() - 1) == ';') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,369 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.StatementCallback;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cursors over large results: the query runs once, the first rows are kept
+// on the heap up to a row and byte budget, and the rest is spilled to a
+// memory-mapped temp file (SpillFile), so later pages are read back instead
+// of re-running the query. Spill files share a global disk budget; a result
+// that would exceed it is cut there and marked truncated. Heap prefixes
+// share a global heap budget the same way, except that rows past it spill
+// to disk rather than being cut. Each tenant may hold a limited number of
+// open cursors. Cursors are dropped after a TTL counted from their last read.
+@Service
+public class ResultCursorService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long RESERVE_CHUNK = 1 << 20;
+
+    private static final class Cursor {
+        final String id;
+        final String dbName;
+        final String[] labels;
+        final List<Map<String, Object>> heapRows;
+        final SpillFile spill;
+        final long total;
+        final long heapBytes;
+        final long diskBytes;
+        final String truncated;
+        volatile Instant lastAccess = Instant.now();
+
+        Cursor(String id, String dbName, String[] labels, List<Map<String, Object>> heapRows, SpillFile spill,
+                long heapBytes, long diskBytes, String truncated) {
+            this.id = id;
+            this.dbName = dbName;
+            this.labels = labels;
+            this.heapRows = heapRows;
+            this.spill = spill;
+            this.total = heapRows.size() + (spill != null ? spill.getRowCount() : 0);
+            this.heapBytes = heapBytes;
+            this.diskBytes = diskBytes;
+            this.truncated = truncated;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> openPerTenant = new ConcurrentHashMap<>();
+    private final AtomicLong heapReserved = new AtomicLong();
+    private final AtomicLong diskReserved = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+    private final int heapRows;
+    private final long heapBytes;
+    private final long heapBudget;
+    private final long diskBudget;
+    private final int maxPerTenant;
+    private final long ttlMillis;
+    private final Path dir;
+
+    public ResultCursorService(@Value("${app.cursor.heap-rows:1000}") int heapRows,
+            @Value("${app.cursor.heap-bytes:4194304}") long heapBytes,
+            @Value("${app.cursor.heap-budget:67108864}") long heapBudget,
+            @Value("${app.cursor.disk-budget:1073741824}") long diskBudget,
+            @Value("${app.cursor.max-per-tenant:16}") int maxPerTenant,
+            @Value("${app.cursor.ttl:10m}") Duration ttl,
+            @Value("${app.cursor.dir:}") String dir) {
+        this.heapRows = heapRows;
+        this.heapBytes = heapBytes;
+        this.heapBudget = heapBudget;
+        this.diskBudget = diskBudget;
+        this.maxPerTenant = maxPerTenant;
+        this.ttlMillis = ttl.toMillis();
+        this.dir = dir.isBlank() ? Path.of(System.getProperty("java.io.tmpdir"), "sql-cursors") : Path.of(dir);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "result-cursor-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    // Runs a row-returning statement into a new cursor and returns its first
+    // page. Called under the tenant's permit with the tenant bound, like any
+    // other raw statement; the driver streams the rows so only the heap
+    // prefix is ever held in memory.
+    public Map<String, Object> open(String dbName, String sql, int pageSize) {
+        StatementKind kind = SqlLexer.classify(sql);
+        if (!kind.returnsRows()) {
+            throw new IllegalArgumentException("Cursors need a statement that returns rows");
+        }
+        checkPageSize(0, pageSize);
+
+        // The tenant's slot is taken before the query runs and goes back with
+        // the cursor, or right away if no cursor comes of it
+        AtomicInteger open = openPerTenant.computeIfAbsent(dbName, k -> new AtomicInteger());
+        if (open.incrementAndGet() > maxPerTenant) {
+            open.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "At most " + maxPerTenant + " open cursors per database; close one first");
+        }
+
+        String tag = SqlMetrics.kindTag(kind);
+        long started = System.nanoTime();
+        String error = null;
+        // Set as soon as read() returns: closing the statement can still fail
+        // after that, and the cursor's spill file and budgets must not leak
+        Cursor[] built = new Cursor[1];
+        try {
+            jdbcTemplate.execute((StatementCallback<Void>) stmt -> {
+                // Connector/J only streams row by row with this fetch size
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                stmt.setMaxRows(0);
+                ResultSet rs = stmt.executeQuery(sql);
+                try {
+                    built[0] = read(dbName, stmt, rs);
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    JdbcUtils.closeResultSet(rs);
+                }
+            });
+        } catch (RuntimeException e) {
+            error = SlowQueryLog.describe(e);
+            if (built[0] != null) {
+                release(built[0]);
+            } else {
+                open.decrementAndGet();
+            }
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            int rows = built[0] == null ? 0 : (int) Math.min(Integer.MAX_VALUE, built[0].total);
+            sqlMetrics.record(tag, dbName, elapsed, error == null, rows);
+            slowQueryLog.record(tag, dbName, sql, null, elapsed, rows, error);
+        }
+
+        Cursor cursor = built[0];
+        cursors.put(key(dbName, cursor.id), cursor);
+        Map<String, Object> result = page(cursor, 0, pageSize);
+        result.put("cursorId", cursor.id);
+        result.put("heapRows", cursor.heapRows.size());
+        result.put("spilledRows", cursor.total - cursor.heapRows.size());
+        result.put("diskBytes", cursor.diskBytes);
+        if (cursor.truncated != null) {
+            result.put("truncated", cursor.truncated);
+        }
+        return result;
+    }
+
+    public Map<String, Object> page(String dbName, String id, long offset, int limit) {
+        Cursor cursor = cursors.get(key(dbName, id));
+        if (cursor == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No cursor " + id);
+        }
+        checkPageSize(offset, limit);
+        return page(cursor, offset, limit);
+    }
+
+    public boolean close(String dbName, String id) {
+        Cursor cursor = cursors.remove(key(dbName, id));
+        if (cursor == null) {
+            return false;
+        }
+        release(cursor);
+        return true;
+    }
+
+    public Map<String, Object> stats(String dbName) {
+        List<Map<String, Object>> open = new ArrayList<>();
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.dbName.equals(dbName)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("cursorId", cursor.id);
+                entry.put("total", cursor.total);
+                entry.put("diskBytes", cursor.diskBytes);
+                entry.put("expiresAt", cursor.lastAccess.plusMillis(ttlMillis).toString());
+                open.add(entry);
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cursors", open);
+        stats.put("maxCursors", maxPerTenant);
+        stats.put("heapReserved", heapReserved.get());
+        stats.put("heapBudget", heapBudget);
+        stats.put("diskReserved", diskReserved.get());
+        stats.put("diskBudget", diskBudget);
+        return stats;
+    }
+
+    private Cursor read(String dbName, Statement stmt, ResultSet rs) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        String[] labels = new String[meta.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = JdbcUtils.lookupColumnName(meta, i + 1);
+        }
+
+        List<Map<String, Object>> heap = new ArrayList<>();
+        long heapSize = 0;
+        SpillFile spill = null;
+        long reserved = 0;
+        String truncated = null;
+        try {
+            while (rs.next()) {
+                Object[] values = new Object[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    values[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+                }
+
+                if (spill == null && heap.size() < heapRows && heapSize < heapBytes) {
+                    Map<String, Object> row = toRow(labels, values);
+                    long size = ResultSizes.estimate(row);
+                    // Past the shared heap budget this row and the rest spill
+                    if (reserve(heapReserved, heapBudget, size)) {
+                        heap.add(row);
+                        heapSize += size;
+                        continue;
+                    }
+                }
+
+                if (spill == null) {
+                    spill = new SpillFile(dir, labels.length);
+                }
+
+                // Disk is reserved a chunk at a time; a mapping cannot pass 2 GB either
+                long needed = spill.getSize() + spill.encode(values) - reserved;
+                if (needed > 0) {
+                    long chunk = (needed + RESERVE_CHUNK - 1) / RESERVE_CHUNK * RESERVE_CHUNK;
+                    if (reserved + chunk > Integer.MAX_VALUE || !reserve(diskReserved, diskBudget, chunk)) {
+                        truncated = "disk-budget";
+                        // Stop the server sending the rest rather than have the driver drain it
+                        stmt.cancel();
+                        break;
+                    }
+                    reserved += chunk;
+                }
+                spill.append();
+            }
+            if (spill != null) {
+                spill.finish();
+            }
+        } catch (RuntimeException | IOException | SQLException e) {
+            if (spill != null) {
+                spill.delete();
+            }
+            heapReserved.addAndGet(-heapSize);
+            diskReserved.addAndGet(-reserved);
+            throw e;
+        }
+        return new Cursor(UUID.randomUUID().toString(), dbName, labels, heap, spill, heapSize, reserved, truncated);
+    }
+
+    private Map<String, Object> page(Cursor cursor, long offset, int limit) {
+        cursor.lastAccess = Instant.now();
+        List<Map<String, Object>> rows = new ArrayList<>(limit);
+        long end = Math.min(cursor.total, offset + limit);
+        long from = offset;
+        while (from < end && from < cursor.heapRows.size()) {
+            rows.add(cursor.heapRows.get((int) from++));
+        }
+        if (from < end) {
+            for (Object[] values : cursor.spill.read(from - cursor.heapRows.size(), (int) (end - from))) {
+                rows.add(toRow(cursor.labels, values));
+            }
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("rows", rows);
+        page.put("offset", offset);
+        page.put("total", cursor.total);
+        page.put("nextOffset", end < cursor.total ? end : null);
+        page.put("expiresAt", cursor.lastAccess.plusMillis(ttlMillis).toString());
+        return page;
+    }
+
+    private static boolean reserve(AtomicLong reservedBytes, long budget, long bytes) {
+        while (true) {
+            long current = reservedBytes.get();
+            if (current + bytes > budget) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(Cursor cursor) {
+        if (cursor.spill != null) {
+            cursor.spill.delete();
+        }
+        heapReserved.addAndGet(-cursor.heapBytes);
+        diskReserved.addAndGet(-cursor.diskBytes);
+        openPerTenant.get(cursor.dbName).decrementAndGet();
+    }
+
+    private static Map<String, Object> toRow(String[] labels, Object[] values) {
+        Map<String, Object> row = new LinkedHashMap<>(labels.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            row.put(labels[i], values[i]);
+        }
+        return row;
+    }
+
+    private static void checkPageSize(long offset, int limit) {
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset must be >= 0 and limit between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private void sweep() {
+        Instant cutoff = Instant.now().minusMillis(ttlMillis);
+        cursors.values().removeIf(cursor -> {
+            if (cursor.lastAccess.isBefore(cutoff)) {
+                release(cursor);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        cursors.values().forEach(this::release);
+        cursors.clear();
+    }
+
+    private static String key(String dbName, String id) {
+        return dbName + "/" + id;
+    }
+}
@@ -0,0 +1,47 @@
+package database;
+
+import java.util.List;
+import java.util.Map;
+
+// Rough heap footprint of queryForList results, close enough to budget
+// caches and caps by. Counts the row map, its entries, keys and values.
+public final class ResultSizes {
+
+    private static final long ROW_OVERHEAD = 64;
+    private static final long ENTRY_OVERHEAD = 48;
+
+    private ResultSizes() {
+    }
+
+    public static long estimate(List<Map<String, Object>> rows) {
+        long bytes = 16;
+        for (Map<String, Object> row : rows) {
+            bytes += estimate(row);
+        }
+        return bytes;
+    }
+
+    public static long estimate(Map<String, Object> row) {
+        long bytes = ROW_OVERHEAD;
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            bytes += ENTRY_OVERHEAD + estimate(entry.getKey()) + estimate(entry.getValue());
+        }
+        return bytes;
+    }
+
+    public static long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String s) {
+            return 40 + 2L * s.length();
+        }
+        if (value instanceof byte[] b) {
+            return 16 + b.length;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        }
+        return 48;
+    }
+}
@@ -0,0 +1,19 @@
+package database;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+// Receives a result set one row at a time, straight off the driver.
+public interface RowSink {
+
+    void begin(ResultSetMetaData meta) throws SQLException, IOException;
+
+    void row(ResultSet rs) throws SQLException, IOException;
+
+    void end() throws IOException;
+
+    // Reports a failure after the response has already started
+    void error(String message) throws IOException;
+}
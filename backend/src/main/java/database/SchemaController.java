@@ -1,13 +1,12 @@
 package database;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -15,46 +14,45 @@ import java.util.Map;
 public class SchemaController {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SchemaService schemaService;
 
+    @Autowired
+    private SchemaEvents schemaEvents;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    // Conditional: a request whose If-None-Match carries the current ETag gets
+    // 304 without the schema being loaded or sent
     @GetMapping("/schema")
-    public ResponseEntity<?> getSchema(@RequestParam String dbName) {
+    public ResponseEntity<?> getSchema(@RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token,
+            WebRequest request) {
+        dbName = tenantDirectory.resolve(token, dbName);
+        String etag = schemaService.getETag(dbName);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         try {
-            // Get all tables in the specified database
-            List<Map<String, Object>> tables = jdbcTemplate.queryForList(
-                    "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ?",
-                    dbName);
-
-            Map<String, Object> schema = new HashMap<>();
-
-            for (Map<String, Object> table : tables) {
-                String tableName = (String) table.get("TABLE_NAME");
-
-                // Get columns for each table
-                List<Map<String, Object>> columns = jdbcTemplate.queryForList(
-                        "SELECT COLUMN_NAME, DATA_TYPE, COLUMN_KEY " +
-                                "FROM INFORMATION_SCHEMA.COLUMNS " +
-                                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? " +
-                                "ORDER BY ORDINAL_POSITION",
-                        dbName, tableName);
-
-                List<Map<String, Object>> columnList = new ArrayList<>();
-                for (Map<String, Object> col : columns) {
-                    Map<String, Object> columnInfo = new HashMap<>();
-                    columnInfo.put("name", col.get("COLUMN_NAME"));
-                    columnInfo.put("type", col.get("DATA_TYPE"));
-                    columnInfo.put("isPrimary", "PRI".equals(col.get("COLUMN_KEY")));
-                    columnList.add(columnInfo);
-                }
-
-                Map<String, Object> tableInfo = new HashMap<>();
-                tableInfo.put("columns", columnList);
-                schema.put(tableName, tableInfo);
-            }
-
-            return ResponseEntity.ok(schema);
+            // Served from cache until DDL runs against this database
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(TenantDirectory.TOKEN_HEADER)
+                    .body(schemaService.getSchema(dbName));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to fetch schema: " + e.getMessage()));
         }
     }
+
+    // Server-Sent Events: a "schema" event with the current ETag on connect and
+    // after every schema change. EventSource cannot set headers, so the token
+    // may also come as a parameter.
+    @GetMapping("/schema/events")
+    public SseEmitter schemaEvents(@RequestParam(required = false) String dbName,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String tenant = tenantDirectory.resolve(token != null ? token : tokenParam, dbName);
+        return schemaEvents.subscribe(tenant, schemaService.getETag(tenant));
+    }
 }
@@ -0,0 +1,98 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Server-Sent Events for schema changes. Each subscriber gets a "schema"
+// event with its tenant's current ETag when it connects and again after
+// every DDL, so the frontend only refetches /api/schema when something
+// changed. Sends happen on one background thread so a slow client never
+// holds up the statement that changed the schema. A comment line goes out
+// periodically to keep proxies from closing idle streams and to notice
+// clients that are gone.
+@Component
+public class SchemaEvents {
+
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sender;
+    private final long timeoutMillis;
+
+    public SchemaEvents(@Value("${app.schema.events-timeout:30m}") Duration timeout,
+            @Value("${app.schema.events-heartbeat:30s}") Duration heartbeat) {
+        this.timeoutMillis = timeout.toMillis();
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "schema-events");
+            t.setDaemon(true);
+            return t;
+        });
+        sender.scheduleWithFixedDelay(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    // EventSource reconnects on its own once the timeout closes the stream
+    public SseEmitter subscribe(String dbName, String etag) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        List<SseEmitter> list = subscribers.computeIfAbsent(dbName, k -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        Runnable remove = () -> list.remove(emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        sender.execute(() -> send(list, emitter, etag));
+        return emitter;
+    }
+
+    public void publish(String dbName, String etag) {
+        List<SseEmitter> list = subscribers.get(dbName);
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> {
+            for (SseEmitter emitter : list) {
+                send(list, emitter, etag);
+            }
+        });
+    }
+
+    public Iterable<String> subscribedTenants() {
+        return subscribers.keySet();
+    }
+
+    private void send(List<SseEmitter> list, SseEmitter emitter, String etag) {
+        try {
+            emitter.send(SseEmitter.event().name("schema").id(etag).data(Map.of("etag", etag)));
+        } catch (IOException | IllegalStateException e) {
+            list.remove(emitter);
+        }
+    }
+
+    private void heartbeat() {
+        subscribers.forEach((dbName, list) -> {
+            for (SseEmitter emitter : list) {
+                try {
+                    emitter.send(SseEmitter.event().comment("keepalive"));
+                } catch (IOException | IllegalStateException e) {
+                    list.remove(emitter);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.values().forEach(list -> list.forEach(SseEmitter::complete));
+    }
+}
@@ -0,0 +1,131 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class SchemaService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private SchemaEvents schemaEvents;
+
+    // dbName -> table name -> {columns: [...]}, as a future so concurrent
+    // requests for one tenant share a single load
+    private final Map<String, CompletableFuture<Map<String, Object>>> cache = new ConcurrentHashMap<>();
+
+    // Schema versions: per tenant, bumped by invalidate(), plus an epoch bumped
+    // by invalidateAll(). The boot id keeps tags from a previous run from
+    // matching after a restart resets the counters.
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong epoch = new AtomicLong();
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    // The map only ever holds the future, so the query runs outside its lock
+    // and invalidate() never waits on the database. A load that an invalidate
+    // overtakes still answers the requests already waiting on it, but its
+    // entry is gone, so nobody after the invalidate sees it.
+    public Map<String, Object> getSchema(String dbName) {
+        CompletableFuture<Map<String, Object>> created = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> future = cache.putIfAbsent(dbName, created);
+        if (future == null) {
+            future = created;
+            try {
+                created.complete(loadSchema(dbName));
+            } catch (RuntimeException e) {
+                cache.remove(dbName, created);
+                created.completeExceptionally(e);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Strong ETag for the tenant's current schema. Read it before the schema
+    // itself: a change in between then leaves the tag older than the body,
+    // which only costs the client one extra fetch.
+    public String getETag(String dbName) {
+        long version = versions.computeIfAbsent(dbName, k -> new AtomicLong()).get();
+        return "\"" + bootId + "-" + epoch.get() + "." + version + "-"
+                + Integer.toHexString(dbName.hashCode()) + "\"";
+    }
+
+    // Called after DDL runs against the tenant. The cache entry goes before
+    // the version moves on, so a new tag is never paired with the old schema.
+    public void invalidate(String dbName) {
+        if (dbName != null) {
+            cache.remove(dbName);
+            versions.computeIfAbsent(dbName, k -> new AtomicLong()).incrementAndGet();
+            schemaEvents.publish(dbName, getETag(dbName));
+        }
+    }
+
+    // Called after CREATE/DROP DATABASE, which may touch any tenant
+    public void invalidateAll() {
+        cache.clear();
+        epoch.incrementAndGet();
+        for (String dbName : schemaEvents.subscribedTenants()) {
+            schemaEvents.publish(dbName, getETag(dbName));
+        }
+    }
+
+    private Map<String, Object> loadSchema(String dbName) {
+        // One query for every column of every table, grouped here
+        List<Map<String, Object>> columns = sqlMetrics.time("schema_load", dbName, () -> jdbcTemplate.queryForList(
+                "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, COLUMN_KEY " +
+                        "FROM INFORMATION_SCHEMA.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = ? " +
+                        "ORDER BY TABLE_NAME, ORDINAL_POSITION",
+                dbName));
+
+        return buildSchema(columns);
+    }
+
+    static Map<String, Object> buildSchema(List<Map<String, Object>> columns) {
+        Map<String, Object> schema = new LinkedHashMap<>();
+        Map<String, List<Map<String, Object>>> columnsByTable = new HashMap<>();
+
+        for (Map<String, Object> col : columns) {
+            String tableName = (String) col.get("TABLE_NAME");
+            List<Map<String, Object>> columnList = columnsByTable.get(tableName);
+            if (columnList == null) {
+                columnList = new ArrayList<>();
+                columnsByTable.put(tableName, columnList);
+
+                Map<String, Object> tableInfo = new HashMap<>();
+                tableInfo.put("columns", columnList);
+                schema.put(tableName, tableInfo);
+            }
+
+            Map<String, Object> columnInfo = new HashMap<>();
+            columnInfo.put("name", col.get("COLUMN_NAME"));
+            columnInfo.put("type", col.get("DATA_TYPE"));
+            columnInfo.put("isPrimary", "PRI".equals(col.get("COLUMN_KEY")));
+            columnList.add(columnInfo);
+        }
+
+        return schema;
+    }
+}
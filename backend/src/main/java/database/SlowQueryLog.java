@@ -0,0 +1,221 @@
+package database;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Statements slower than app.slow-query.threshold, attributed to the tenant
+// and the raw/block kind that ran them, whether they completed or failed (a
+// statement killed by the tenant timeout is the slowest kind there is). The latest entries are kept in a
+// ring for /api/sql/slow and each is appended to a JSON-lines file. The
+// EXPLAIN FORMAT=JSON plan is captured afterwards on a background thread;
+// when that falls behind, entries are logged without a plan.
+@Component
+public class SlowQueryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private static final class SlowQuery {
+        final Instant at = Instant.now();
+        final String dbName;
+        final String kind;
+        final String sql;
+        final long durationMs;
+        final int rows;
+        final String error;
+        volatile JsonNode plan;
+
+        SlowQuery(String dbName, String kind, String sql, long durationMs, int rows, String error) {
+            this.dbName = dbName;
+            this.kind = kind;
+            this.sql = sql;
+            this.durationMs = durationMs;
+            this.rows = rows;
+            this.error = error;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("at", at.toString());
+            map.put("dbName", dbName);
+            map.put("kind", kind);
+            map.put("sql", sql);
+            map.put("durationMs", durationMs);
+            map.put("rows", rows);
+            map.put("outcome", error == null ? "ok" : "error");
+            map.put("error", error);
+            map.put("plan", plan);
+            return map;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final long thresholdNanos;
+    private final int ringSize;
+    private final Path file;
+    private final ArrayDeque<SlowQuery> ring = new ArrayDeque<>();
+    private final ThreadPoolExecutor explainer;
+
+    public SlowQueryLog(@Value("${app.slow-query.threshold:1s}") Duration threshold,
+            @Value("${app.slow-query.ring-size:200}") int ringSize,
+            @Value("${app.slow-query.file:logs/slow-queries.jsonl}") String file) {
+        this.thresholdNanos = threshold.toNanos();
+        this.ringSize = ringSize;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64), r -> {
+            Thread t = new Thread(r, "slow-query-explain");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    // Times the action and logs it if it was slow, including when it throws.
+    // args are the statement's bind values, used for the EXPLAIN but not
+    // recorded.
+    public <T> T time(String kind, String dbName, String sql, Object[] args, Supplier<T> action) {
+        long started = System.nanoTime();
+        T result = null;
+        String error = null;
+        try {
+            result = action.get();
+            return result;
+        } catch (RuntimeException | Error e) {
+            error = describe(e);
+            throw e;
+        } finally {
+            record(kind, dbName, sql, args, System.nanoTime() - started, rowCount(result), error);
+        }
+    }
+
+    // error is null for a statement that completed
+    public void record(String kind, String dbName, String sql, Object[] args, long nanos, int rows, String error) {
+        if (nanos < thresholdNanos || sql == null) {
+            return;
+        }
+        SlowQuery entry = new SlowQuery(dbName, kind, sql, nanos / 1_000_000, rows, error);
+        synchronized (ring) {
+            if (ring.size() == ringSize) {
+                ring.removeFirst();
+            }
+            ring.addLast(entry);
+        }
+
+        if (explainable(sql) && dbName != null) {
+            explainer.execute(() -> {
+                explain(entry, args);
+                append(entry);
+            });
+        } else {
+            explainer.execute(() -> append(entry));
+        }
+    }
+
+    // Slowest first
+    public List<Map<String, Object>> worst(String dbName, int limit) {
+        List<SlowQuery> matching = new ArrayList<>();
+        synchronized (ring) {
+            for (SlowQuery entry : ring) {
+                if (entry.dbName != null && entry.dbName.equals(dbName)) {
+                    matching.add(entry);
+                }
+            }
+        }
+        matching.sort(Comparator.comparingLong((SlowQuery entry) -> entry.durationMs).reversed());
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SlowQuery entry : matching.subList(0, Math.min(limit, matching.size()))) {
+            result.add(entry.toMap());
+        }
+        return result;
+    }
+
+    private void explain(SlowQuery entry, Object[] args) {
+        TenantContext.set(entry.dbName);
+        try {
+            List<String> plan = jdbcTemplate.queryForList("EXPLAIN FORMAT=JSON " + entry.sql, String.class,
+                    args == null ? new Object[0] : args);
+            if (!plan.isEmpty()) {
+                entry.plan = objectMapper.readTree(plan.get(0));
+            }
+        } catch (Exception e) {
+            log.debug("Could not explain slow query on {}: {}", entry.dbName, e.getMessage());
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    private void append(SlowQuery entry) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            String line = objectMapper.writeValueAsString(entry.toMap()) + "\n";
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Could not append to slow query log {}: {}", file, e.getMessage());
+        }
+    }
+
+    // EXPLAIN takes SELECT, TABLE and INSERT/REPLACE/UPDATE/DELETE
+    private static boolean explainable(String sql) {
+        StatementKind kind = SqlLexer.classify(sql);
+        if (kind == StatementKind.SELECT) {
+            return true;
+        }
+        return kind == StatementKind.DML && !sql.stripLeading().regionMatches(true, 0, "LOAD", 0, 4);
+    }
+
+    // The driver's message rather than Spring's wrapper, which repeats the SQL
+    static String describe(Throwable e) {
+        Throwable cause = e instanceof DataAccessException dae ? dae.getMostSpecificCause() : e;
+        return String.valueOf(cause.getMessage());
+    }
+
+    private static int rowCount(Object result) {
+        if (result instanceof List<?> list) {
+            return list.size();
+        }
+        if (result instanceof Integer count) {
+            return count;
+        }
+        return 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainer.shutdown();
+    }
+}
@@ -0,0 +1,287 @@
+package database;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Rows that did not fit on the heap, appended to a temp file while the
+// result is read and memory-mapped read-only once it is complete. Each value
+// is a tag byte followed by its payload: integers as zigzag varints, floats
+// and doubles as 4 and 8 bytes, strings, decimals and byte arrays as varint
+// length + bytes, and JDBC date/time values in a form that decodes back to
+// the same Java type, so a page read from disk serializes exactly like one
+// held in memory.
+// Every INDEX_EVERY-th row offset is kept, so a page seeks close to its
+// first row and skips the rest.
+public class SpillFile {
+
+    private static final int INDEX_EVERY = 64;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte FLOAT = 3;
+    private static final byte STRING = 4;
+    private static final byte BYTES = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte DECIMAL = 8;
+    private static final byte BIG_INTEGER = 9;
+    private static final byte TIMESTAMP = 10;
+    private static final byte DATE = 11;
+    private static final byte TIME = 12;
+    private static final byte LOCAL_DATE_TIME = 13;
+    private static final byte LOCAL_DATE = 14;
+    private static final byte LOCAL_TIME = 15;
+
+    private final Path path;
+    private final int columnCount;
+    private OutputStream out;
+    private final ByteArrayOutputStream row = new ByteArrayOutputStream(256);
+    private long[] index = new long[1024];
+    private long rowCount;
+    private long size;
+    private MappedByteBuffer mapped;
+
+    public SpillFile(Path dir, int columnCount) throws IOException {
+        Files.createDirectories(dir);
+        this.path = Files.createTempFile(dir, "cursor-", ".rows");
+        this.columnCount = columnCount;
+        this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+    }
+
+    // Encodes a row without writing it, so the caller can check its size
+    // against a budget first; returns the encoded size
+    public int encode(Object[] values) {
+        row.reset();
+        for (Object value : values) {
+            encode(value);
+        }
+        return row.size();
+    }
+
+    // Writes the row last passed to encode()
+    public void append() throws IOException {
+        if (rowCount % INDEX_EVERY == 0) {
+            int slot = (int) (rowCount / INDEX_EVERY);
+            if (slot == index.length) {
+                index = Arrays.copyOf(index, slot * 2);
+            }
+            index[slot] = size;
+        }
+        row.writeTo(out);
+        rowCount++;
+        size += row.size();
+    }
+
+    // Done writing: the file is flushed and mapped for reading
+    public void finish() throws IOException {
+        out.close();
+        out = null;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Spill file too large to map: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    // Rows [from, from + count), clipped to the end. Safe to call from
+    // several threads at once; each read gets its own view of the mapping.
+    public List<Object[]> read(long from, int count) {
+        List<Object[]> rows = new ArrayList<>(count);
+        if (from >= rowCount) {
+            return rows;
+        }
+        ByteBuffer buf = mapped.duplicate();
+        long slot = from / INDEX_EVERY;
+        buf.position((int) index[(int) slot]);
+        for (long skip = from - slot * INDEX_EVERY; skip > 0; skip--) {
+            for (int c = 0; c < columnCount; c++) {
+                decode(buf);
+            }
+        }
+        long end = Math.min(rowCount, from + count);
+        for (long r = from; r < end; r++) {
+            Object[] values = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = decode(buf);
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    // The mapping itself is released when it is garbage collected, so a page
+    // being read as the cursor expires still completes
+    public void delete() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    private void encode(Object value) {
+        if (value == null) {
+            row.write(NULL);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            row.write(LONG);
+            long v = ((Number) value).longValue();
+            writeVarint((v << 1) ^ (v >> 63));
+        } else if (value instanceof Double d) {
+            row.write(DOUBLE);
+            writeLong(Double.doubleToLongBits(d));
+        } else if (value instanceof Float f) {
+            row.write(FLOAT);
+            writeInt(Float.floatToIntBits(f));
+        } else if (value instanceof Boolean b) {
+            row.write(b ? TRUE : FALSE);
+        } else if (value instanceof byte[] bytes) {
+            row.write(BYTES);
+            writeVarint(bytes.length);
+            row.writeBytes(bytes);
+        } else if (value instanceof BigDecimal decimal) {
+            writeString(DECIMAL, decimal.toString());
+        } else if (value instanceof BigInteger integer) {
+            writeString(BIG_INTEGER, integer.toString());
+        } else if (value instanceof java.sql.Timestamp timestamp) {
+            row.write(TIMESTAMP);
+            writeLong(timestamp.getTime());
+            writeVarint(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date date) {
+            row.write(DATE);
+            writeLong(date.getTime());
+        } else if (value instanceof java.sql.Time time) {
+            row.write(TIME);
+            writeLong(time.getTime());
+        } else if (value instanceof LocalDateTime dateTime) {
+            writeString(LOCAL_DATE_TIME, dateTime.toString());
+        } else if (value instanceof LocalDate date) {
+            writeString(LOCAL_DATE, date.toString());
+        } else if (value instanceof LocalTime time) {
+            writeString(LOCAL_TIME, time.toString());
+        } else {
+            writeString(STRING, value.toString());
+        }
+    }
+
+    private static Object decode(ByteBuffer buf) {
+        byte tag = buf.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG: {
+                long v = readVarint(buf);
+                return (v >>> 1) ^ -(v & 1);
+            }
+            case DOUBLE:
+                return Double.longBitsToDouble(buf.getLong());
+            case FLOAT:
+                return Float.intBitsToFloat(buf.getInt());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTES: {
+                byte[] bytes = new byte[(int) readVarint(buf)];
+                buf.get(bytes);
+                return bytes;
+            }
+            case DECIMAL:
+                return new BigDecimal(readString(buf));
+            case BIG_INTEGER:
+                return new BigInteger(readString(buf));
+            case TIMESTAMP: {
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(buf.getLong());
+                timestamp.setNanos((int) readVarint(buf));
+                return timestamp;
+            }
+            case DATE:
+                return new java.sql.Date(buf.getLong());
+            case TIME:
+                return new java.sql.Time(buf.getLong());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(readString(buf));
+            case LOCAL_DATE:
+                return LocalDate.parse(readString(buf));
+            case LOCAL_TIME:
+                return LocalTime.parse(readString(buf));
+            case STRING:
+                return readString(buf);
+            default:
+                throw new IllegalStateException("Corrupt spill file: unknown tag " + tag);
+        }
+    }
+
+    private void writeString(byte tag, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        row.write(tag);
+        writeVarint(bytes.length);
+        row.writeBytes(bytes);
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            row.write(value >>> shift);
+        }
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            row.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        row.write((int) value);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[(int) readVarint(buf)];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarint(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
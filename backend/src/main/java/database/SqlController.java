@@ -1,11 +1,35 @@
 package database;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/sql")
@@ -17,33 +41,475 @@ public class SqlController {
     @Autowired
     private BlockSqlService blockSqlService;
 
+    @Autowired
+    private QueryStreamer queryStreamer;
+
+    @Autowired
+    private ResultCursorService resultCursorService;
+
+    @Autowired
+    private IndexAdvisor indexAdvisor;
+
+    @Autowired
+    private CsvImportService csvImportService;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private TenantDirectory tenantDirectory;
+
+    @Autowired
+    private TenantLimits tenantLimits;
+
+    @Autowired
+    private QueryRegistry queryRegistry;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType MSGPACK = MediaType.parseMediaType("application/x-msgpack");
+
     @PostMapping("/raw")
-    public ResponseEntity<?> executeRaw(@RequestBody Map<String, String> payload) {
+    public WebAsyncTask<ResponseEntity<?>> executeRaw(@RequestBody Map<String, String> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
         String sql = payload.get("sql");
-        String dbName = payload.get("dbName");
+        String dbName = tenantDirectory.resolve(token, payload.get("dbName"));
 
-        if (dbName == null)
-            return ResponseEntity.badRequest().body(Map.of("error", "dbName is required"));
+        // Script mode: {"mode": "script", "onError": "stop" | "continue"}
+        if ("script".equals(payload.get("mode"))) {
+            boolean stopOnError = !"continue".equals(payload.get("onError"));
+            return run(dbName, queryId, sql, "SQL Error: ",
+                    () -> rawSqlService.executeScript(sql, dbName, stopOnError));
+        }
+        return run(dbName, queryId, sql, "SQL Error: ", () -> rawSqlService.executeRawSql(sql, dbName));
+    }
 
+    // Opt-in streaming mode: POST /api/sql/raw?format=ndjson|columnar|msgpack
+    // writes rows as the driver reads them instead of collecting the whole
+    // result first.
+    @PostMapping(value = "/raw", params = "format")
+    public ResponseEntity<StreamingResponseBody> executeRawStream(@RequestParam String format,
+            @RequestBody Map<String, String> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String sql = payload.get("sql");
+        String dbName = tenantDirectory.resolve(token, payload.get("dbName"));
+
+        MediaType contentType = rowFormat(format);
+        if (contentType == null)
+            return streamError(HttpStatus.BAD_REQUEST, "Unsupported format: " + format);
+
+        QueryRegistry.RunningQuery query = queryRegistry.register(dbName, queryId, sql);
+
+        // Statements without rows run as usual and come back as a single message
+        if (sql == null || !SqlLexer.classify(sql).returnsRows()) {
+            TenantContext.set(dbName);
+            queryRegistry.enter(query);
+            try (TenantLimits.Permit permit = tenantLimits.admit(dbName)) {
+                Object result = rawSqlService.executeRawSql(sql, dbName);
+                return ResponseEntity.ok().contentType(contentType).header(QueryRegistry.ID_HEADER, query.getId())
+                        .body(out -> writeMessage(format, out, result));
+            } catch (TenantBusyException e) {
+                throw e;
+            } catch (Exception e) {
+                return streamError(HttpStatus.BAD_REQUEST, "SQL Error: " + e.getMessage());
+            } finally {
+                queryRegistry.finish(query);
+                TenantContext.clear();
+            }
+        }
+
+        return streamRows(dbName, query, format, contentType, "SQL Error: ",
+                sink -> queryStreamer.stream(dbName, sql, sink));
+    }
+
+    // A client that goes away is noticed on the next write, and
+    // QueryStreamer cancels the statement then
+    private ResponseEntity<StreamingResponseBody> streamRows(String dbName, QueryRegistry.RunningQuery query,
+            String format, MediaType contentType, String errorPrefix, RowStream rows) {
+        TenantLimits.Permit permit = admitStream(dbName, query);
+        StreamingResponseBody body = out -> {
+            queryRegistry.enter(query);
+            try {
+                RowSink sink = rowSink(format, out);
+                try {
+                    rows.writeTo(sink);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    sink.error(errorPrefix + e.getMessage());
+                }
+            } finally {
+                queryRegistry.finish(query);
+                permit.close();
+            }
+        };
+        return ResponseEntity.ok().contentType(contentType).header(QueryRegistry.ID_HEADER, query.getId()).body(body);
+    }
+
+    private interface RowStream {
+        void writeTo(RowSink sink) throws IOException;
+    }
+
+    // Streams take the tenant's permit here, before the response is
+    // committed, so a busy tenant gets a real 429 rather than a 200 with the
+    // error in the body. The body hands it back when it is done, and so does
+    // the end of the async request, for a body that never got to run.
+    private TenantLimits.Permit admitStream(String dbName, QueryRegistry.RunningQuery query) {
+        TenantLimits.Permit admitted;
         try {
-            Object result = rawSqlService.executeRawSql(sql, dbName);
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(Map.of("error", "SQL Error: " + e.getMessage()));
+            admitted = tenantLimits.admit(dbName);
+        } catch (TenantBusyException e) {
+            queryRegistry.finish(query);
+            throw e;
         }
+        AtomicBoolean released = new AtomicBoolean();
+        TenantLimits.Permit permit = () -> {
+            if (released.compareAndSet(false, true)) {
+                admitted.close();
+            }
+        };
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                .getRequest();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(permit, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permit.close();
+            }
+        });
+        return permit;
+    }
+
+    // ndjson repeats the column names in every row; columnar sends them once
+    // and each row as an array; msgpack is the columnar layout in MessagePack
+    private static MediaType rowFormat(String format) {
+        return switch (format) {
+            case "ndjson" -> NDJSON;
+            case "columnar" -> MediaType.APPLICATION_JSON;
+            case "msgpack" -> MSGPACK;
+            default -> null;
+        };
+    }
+
+    private RowSink rowSink(String format, OutputStream out) throws IOException {
+        return switch (format) {
+            case "columnar" -> new ColumnarRowSink(objectMapper, out);
+            case "msgpack" -> new MsgpackRowSink(out);
+            default -> new NdjsonRowSink(objectMapper, out);
+        };
+    }
+
+    private void writeMessage(String format, OutputStream out, Object message) throws IOException {
+        if ("msgpack".equals(format)) {
+            MsgpackRowSink.writeMessage(out, message);
+        } else {
+            objectMapper.writeValue(out, Map.of("message", message));
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamError(HttpStatus status, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, Map.of("error", message)));
     }
 
     @PostMapping("/block")
-    public ResponseEntity<?> executeBlock(@RequestBody Map<String, Object> payload) {
-        String dbName = (String) payload.get("dbName");
-        if (dbName == null)
-            return ResponseEntity.badRequest().body(Map.of("error", "dbName is required"));
+    public WebAsyncTask<ResponseEntity<?>> executeBlock(@RequestBody Map<String, Object> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String dbName = tenantDirectory.resolve(token, (String) payload.get("dbName"));
+        payload.put("dbName", dbName);
 
+        String description = "block " + payload.get("type") + " on " + payload.get("table");
+        return run(dbName, queryId, description, "Block execution error: ",
+                () -> blockSqlService.executeBlock(payload));
+    }
+
+    // POST /api/sql/block?format=... streams a select block in one of the
+    // raw formats above
+    @PostMapping(value = "/block", params = "format")
+    public ResponseEntity<StreamingResponseBody> executeBlockStream(@RequestParam String format,
+            @RequestBody Map<String, Object> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String dbName = tenantDirectory.resolve(token, (String) payload.get("dbName"));
+        payload.put("dbName", dbName);
+
+        MediaType contentType = rowFormat(format);
+        if (contentType == null)
+            return streamError(HttpStatus.BAD_REQUEST, "Unsupported format: " + format);
+        if (!"select".equals(payload.get("type")) || payload.get("pageSize") != null)
+            return streamError(HttpStatus.BAD_REQUEST, "format is only supported for select blocks without pageSize");
+
+        QueryRegistry.RunningQuery query = queryRegistry.register(dbName, queryId,
+                "block select on " + payload.get("table"));
+        return streamRows(dbName, query, format, contentType, "Block execution error: ",
+                sink -> blockSqlService.streamSelect(payload, sink));
+    }
+
+    @PostMapping("/block/batch")
+    public WebAsyncTask<ResponseEntity<?>> executeBlockBatch(@RequestBody Map<String, Object> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String dbName = tenantDirectory.resolve(token, (String) payload.get("dbName"));
+        List<Map<String, Object>> blocks = (List<Map<String, Object>>) payload.get("blocks");
+        if (blocks == null)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "blocks is required");
+
+        String description = "block batch of " + blocks.size();
+        return run(dbName, queryId, description, "Block execution error: ",
+                () -> blockSqlService.executeBatch(dbName, blocks));
+    }
+
+    // Body is the raw CSV, read incrementally: POST /api/sql/import?table=..
+    @PostMapping("/import")
+    public WebAsyncTask<ResponseEntity<?>> importCsv(@RequestParam(required = false) String dbName,
+            @RequestParam String table, InputStream body,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String tenant = tenantDirectory.resolve(token, dbName);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16);
+        return run(tenant, queryId, "import into " + table, "Import error: ",
+                () -> csvImportService.importCsv(tenant, table, reader));
+    }
+
+    // Runs a statement for a tenant on the async executor, under its limits
+    // and registered under a query id so /cancel/{id} can stop it, and maps
+    // the outcome: 206 with X-Result-Truncated when rows were cut at a cap,
+    // 504 when the statement timed out. A busy tenant gets 429 via
+    // ApiExceptionHandler. If the container reports the client gone, or the
+    // async request times out, the statement is cancelled rather than left
+    // running with nobody waiting for it.
+    private WebAsyncTask<ResponseEntity<?>> run(String dbName, String queryId, String sql, String errorPrefix,
+            Callable<Object> action) {
+        QueryRegistry.RunningQuery query = queryRegistry.register(dbName, queryId, sql);
+        String id = query.getId();
+
+        WebAsyncTask<ResponseEntity<?>> task = new WebAsyncTask<>(() -> {
+            TenantContext.set(dbName);
+            queryRegistry.enter(query);
+            try (TenantLimits.Permit permit = tenantLimits.admit(dbName)) {
+                Object result = action.call();
+                if (result instanceof CappedRows capped) {
+                    return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                            .header(QueryRegistry.ID_HEADER, id)
+                            .header(CappedRows.HEADER, capped.getLimit())
+                            .body(capped);
+                }
+                return ResponseEntity.ok().header(QueryRegistry.ID_HEADER, id).body(result);
+            } catch (TenantBusyException | ResponseStatusException e) {
+                // Keep their own status (429 for a busy tenant or too many cursors)
+                throw e;
+            } catch (Exception e) {
+                HttpStatus status = HttpStatus.BAD_REQUEST;
+                String message = e.getMessage();
+                if (query.isCancelled()) {
+                    message = "query " + id + " was cancelled";
+                } else if (TenantLimits.isTimeout(e)) {
+                    tenantLimits.recordTimeout(dbName);
+                    status = HttpStatus.GATEWAY_TIMEOUT;
+                    message = "statement exceeded the " + tenantLimits.getStatementTimeoutSeconds() + "s time limit";
+                }
+                return ResponseEntity.status(status).header(QueryRegistry.ID_HEADER, id)
+                        .body(Map.of("error", errorPrefix + message));
+            } finally {
+                queryRegistry.finish(query);
+                TenantContext.clear();
+            }
+        });
+        task.onError(() -> {
+            queryRegistry.cancel(query);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).header(QueryRegistry.ID_HEADER, id)
+                    .body(Map.of("error", errorPrefix + "request aborted, query " + id + " cancelled"));
+        });
+        task.onTimeout(() -> {
+            queryRegistry.cancel(query);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(QueryRegistry.ID_HEADER, id)
+                    .body(Map.of("error", errorPrefix + "request timed out, query " + id + " cancelled"));
+        });
+        // Also covers a task that never got to run
+        task.onCompletion(() -> {
+            queryRegistry.cancel(query);
+            queryRegistry.finish(query);
+        });
+        return task;
+    }
+
+    @PostMapping("/cancel/{id}")
+    public ResponseEntity<?> cancel(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String tenant = tenantDirectory.resolve(token, dbName);
+        if (!queryRegistry.cancel(tenant, id))
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No running query " + id));
+        return ResponseEntity.ok(Map.of("message", "Query " + id + " cancelled."));
+    }
+
+    @GetMapping("/running")
+    public ResponseEntity<?> running(@RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(queryRegistry.running(tenantDirectory.resolve(token, dbName)));
+    }
+
+    // Large results without re-running the query: POST /api/sql/cursor
+    // {"sql": .., "pageSize": 500} runs it once and returns the first page and
+    // a cursorId; later pages come from GET /api/sql/cursor/{cursorId}/rows.
+    @PostMapping("/cursor")
+    public WebAsyncTask<ResponseEntity<?>> openCursor(@RequestBody Map<String, String> payload,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String sql = payload.get("sql");
+        String dbName = tenantDirectory.resolve(token, payload.get("dbName"));
+        int pageSize;
         try {
-            Object result = blockSqlService.executeBlock(payload);
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Block execution error: " + e.getMessage()));
+            pageSize = payload.get("pageSize") == null ? 500 : Integer.parseInt(payload.get("pageSize").trim());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "pageSize must be a number");
+        }
+        return run(dbName, queryId, sql, "SQL Error: ", () -> resultCursorService.open(dbName, sql, pageSize));
+    }
+
+    @GetMapping("/cursor")
+    public ResponseEntity<?> cursors(@RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(resultCursorService.stats(tenantDirectory.resolve(token, dbName)));
+    }
+
+    @GetMapping("/cursor/{id}/rows")
+    public ResponseEntity<?> cursorRows(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(resultCursorService.page(tenantDirectory.resolve(token, dbName), id, offset, limit));
+    }
+
+    @DeleteMapping("/cursor/{id}")
+    public ResponseEntity<?> closeCursor(@PathVariable String id, @RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        if (!resultCursorService.close(tenantDirectory.resolve(token, dbName), id))
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No cursor " + id));
+        return ResponseEntity.ok(Map.of("message", "Cursor " + id + " closed."));
+    }
+
+    // Streams a whole table, or a row-returning statement, as a download:
+    // GET /api/sql/export?table=..|sql=..&format=csv|bin&gzip=true. Browser
+    // downloads cannot set headers, so the token and query id may also come as
+    // parameters.
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String dbName,
+            @RequestParam(required = false) String table,
+            @RequestParam(required = false) String sql,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestParam(value = "queryId", required = false) String queryIdParam,
+            @RequestHeader(value = QueryRegistry.ID_HEADER, required = false) String queryId,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String tenant = tenantDirectory.resolve(token != null ? token : tokenParam, dbName);
+        String query;
+        String fileName;
+        if (table != null && !table.isBlank()) {
+            try {
+                query = "SELECT * FROM " + SqlTemplateCache.quote(table);
+            } catch (IllegalArgumentException e) {
+                return streamError(HttpStatus.BAD_REQUEST, "Invalid table name");
+            }
+            fileName = table;
+        } else if (SqlLexer.classify(sql).returnsRows()) {
+            query = sql;
+            fileName = "export";
+        } else {
+            return streamError(HttpStatus.BAD_REQUEST, "table or a row-returning sql is required");
         }
+
+        MediaType contentType;
+        if ("csv".equals(format)) {
+            contentType = MediaType.parseMediaType("text/csv");
+            fileName += ".csv";
+        } else if ("bin".equals(format)) {
+            contentType = MediaType.APPLICATION_OCTET_STREAM;
+            fileName += ".sqlb";
+        } else {
+            return streamError(HttpStatus.BAD_REQUEST, "Unsupported format: " + format);
+        }
+        if (gzip) {
+            contentType = MediaType.parseMediaType("application/gzip");
+            fileName += ".gz";
+        }
+
+        QueryRegistry.RunningQuery running = queryRegistry.register(tenant,
+                queryId != null ? queryId : queryIdParam, query);
+
+        TenantLimits.Permit permit = admitStream(tenant, running);
+
+        // Runs on the MVC async executor, not the request thread
+        StreamingResponseBody body = out -> {
+            queryRegistry.enter(running);
+            try {
+                OutputStream target = gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+                RowSink sink = "csv".equals(format) ? new CsvRowSink(target) : new BinaryRowSink(target);
+                try {
+                    queryStreamer.stream(tenant, query, sink);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    sink.error("SQL Error: " + e.getMessage());
+                }
+                if (target instanceof GZIPOutputStream gzipOut) {
+                    gzipOut.finish();
+                }
+            } finally {
+                queryRegistry.finish(running);
+                permit.close();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(QueryRegistry.ID_HEADER, running.getId())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/limits")
+    public ResponseEntity<?> limits(@RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(tenantLimits.stats(tenantDirectory.resolve(token, dbName)));
+    }
+
+    // Slowest recent statements for the caller's database, with their plans
+    @GetMapping("/slow")
+    public ResponseEntity<?> slowQueries(@RequestParam(required = false) String dbName,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(slowQueryLog.worst(tenantDirectory.resolve(token, dbName), limit));
+    }
+
+    // Secondary indexes worth adding for the caller's block filters, and the
+    // before/after latency of those already built by the advisor
+    @GetMapping("/indexes")
+    public ResponseEntity<?> indexSuggestions(@RequestParam(required = false) String dbName,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        return ResponseEntity.ok(indexAdvisor.suggestions(tenantDirectory.resolve(token, dbName)));
+    }
+
+    // {"enabled": true} lets the advisor build suggested indexes in the background
+    @PostMapping("/indexes/auto")
+    public ResponseEntity<?> indexAutoCreate(@RequestBody Map<String, Object> payload,
+            @RequestHeader(value = TenantDirectory.TOKEN_HEADER, required = false) String token) {
+        String dbName = tenantDirectory.resolve(token, (String) payload.get("dbName"));
+        boolean enabled = Boolean.TRUE.equals(payload.get("enabled")) || "true".equals(payload.get("enabled"));
+        indexAdvisor.setAutoCreate(dbName, enabled);
+        return ResponseEntity.ok(Map.of("autoCreate", enabled));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> cacheStats() {
+        return ResponseEntity.ok(resultCache.stats());
     }
 }
@@ -0,0 +1,142 @@
+package database;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Meters for the SQL execution path. Statements are timed per kind (the
+// StatementKind, "block_<type>", "auth_login" and so on) and per tenant.
+// Tenant tags are bounded: a tenant earns its own tag once it has run
+// app.metrics.tenant-tag-min-requests statements, until app.metrics.tenant-tags
+// tenants hold one; everyone else is reported as "other". Percentile
+// histograms go on sql.latency, tagged by kind alone, so their bucket series
+// are not multiplied by tenant and outcome. Per-endpoint HTTP timers and the
+// HikariCP pool gauges come from Spring Boot's own metrics.
+@Component
+public class SqlMetrics {
+
+    private static final String OTHER = "other";
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final int maxTenantTags;
+    private final long minRequestsForTag;
+    private final Map<String, LongAdder> tenantRequests = new ConcurrentHashMap<>();
+    private final Set<String> taggedTenants = ConcurrentHashMap.newKeySet();
+
+    public SqlMetrics(MeterRegistry registry, DataSource dataSource,
+            @Value("${app.metrics.tenant-tags:20}") int maxTenantTags,
+            @Value("${app.metrics.tenant-tag-min-requests:100}") long minRequestsForTag) {
+        this.registry = registry;
+        this.maxTenantTags = maxTenantTags;
+        this.minRequestsForTag = minRequestsForTag;
+
+        if (dataSource instanceof BoundedDataSource bounded) {
+            Gauge.builder("jdbc.limiter.available", bounded, BoundedDataSource::availablePermits)
+                    .description("Free JDBC limiter permits")
+                    .register(registry);
+            Gauge.builder("jdbc.limiter.waiting", bounded, BoundedDataSource::queueLength)
+                    .description("Threads waiting for a JDBC limiter permit")
+                    .register(registry);
+        }
+    }
+
+    // Times the action as one statement of the given kind. Rows in a row list
+    // result, or in a page's "rows", are counted too.
+    public <T> T time(String kind, String dbName, Supplier<T> action) {
+        String tenant = tenantTag(dbName);
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T result = action.get();
+            outcome = "ok";
+            int rows = countRows(result);
+            if (rows > 0) {
+                registry.counter("sql.rows.returned", "kind", kind, "tenant", tenant).increment(rows);
+            }
+            return result;
+        } finally {
+            long nanos = sample.stop(Timer.builder("sql.statements")
+                    .description("SQL statements run for clients")
+                    .tags("kind", kind, "tenant", tenant, "outcome", outcome)
+                    .register(registry));
+            latency(kind, nanos);
+        }
+    }
+
+    // For statements timed by the caller, such as those of a script
+    public void record(String kind, String dbName, long nanos, boolean ok, int rows) {
+        String tenant = tenantTag(dbName);
+        Timer.builder("sql.statements")
+                .description("SQL statements run for clients")
+                .tags("kind", kind, "tenant", tenant, "outcome", ok ? "ok" : "error")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        latency(kind, nanos);
+        if (rows > 0) {
+            registry.counter("sql.rows.returned", "kind", kind, "tenant", tenant).increment(rows);
+        }
+    }
+
+    private void latency(String kind, long nanos) {
+        Timer.builder("sql.latency")
+                .description("SQL statement latency by kind, for percentiles")
+                .tags("kind", kind)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void responseBytes(String uri, long bytes) {
+        registry.summary("http.server.response.bytes", "uri", uri).record(bytes);
+    }
+
+    public static String kindTag(StatementKind kind) {
+        return kind.name().toLowerCase();
+    }
+
+    public static String blockTag(Object type) {
+        return type == null ? "block_unknown" : "block_" + type.toString().toLowerCase();
+    }
+
+    private String tenantTag(String dbName) {
+        if (dbName == null) {
+            return NONE;
+        }
+        if (taggedTenants.contains(dbName)) {
+            return dbName;
+        }
+        LongAdder count = tenantRequests.computeIfAbsent(dbName, k -> new LongAdder());
+        count.increment();
+        if (count.sum() >= minRequestsForTag && taggedTenants.size() < maxTenantTags) {
+            synchronized (taggedTenants) {
+                if (taggedTenants.size() < maxTenantTags) {
+                    taggedTenants.add(dbName);
+                    tenantRequests.remove(dbName);
+                    return dbName;
+                }
+            }
+        }
+        return OTHER;
+    }
+
+    private static int countRows(Object result) {
+        if (result instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Map) {
+            return list.size();
+        }
+        if (result instanceof Map<?, ?> map && map.get("rows") instanceof List<?> rows) {
+            return rows.size();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,75 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits a script into statements on the current delimiter, ignoring
+// delimiters inside quotes and comments. A line starting with DELIMITER
+// changes the delimiter, as in the mysql client, so procedure and trigger
+// bodies containing ';' can be pasted as-is.
+public final class SqlScriptSplitter {
+
+    private SqlScriptSplitter() {
+    }
+
+    public static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        String delimiter = ";";
+        int n = script.length();
+        int start = 0;
+        int i = 0;
+        boolean lineStart = true;
+
+        while (i < n) {
+            if (lineStart) {
+                lineStart = false;
+                int word = i;
+                while (word < n && (script.charAt(word) == ' ' || script.charAt(word) == '\t')) {
+                    word++;
+                }
+                if (script.regionMatches(true, word, "DELIMITER", 0, 9)
+                        && word + 9 < n && Character.isWhitespace(script.charAt(word + 9))) {
+                    add(statements, script.substring(start, i));
+                    int end = script.indexOf('\n', word);
+                    end = end < 0 ? n : end;
+                    String next = script.substring(word + 9, end).trim();
+                    if (!next.isEmpty()) {
+                        delimiter = next;
+                    }
+                    i = end;
+                    start = end;
+                    continue;
+                }
+            }
+
+            char c = script.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = SqlLexer.skipQuoted(script, i, n, c);
+            } else if (c == '#' || (c == '-' && script.startsWith("--", i)
+                    && (i + 2 == n || Character.isWhitespace(script.charAt(i + 2))))) {
+                // Stop at the newline so the next line is still checked for DELIMITER
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? n : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (script.startsWith(delimiter, i)) {
+                add(statements, script.substring(start, i));
+                i += delimiter.length();
+                start = i;
+            } else {
+                lineStart = c == '\n';
+                i++;
+            }
+        }
+        add(statements, script.substring(start));
+        return statements;
+    }
+
+    private static void add(List<String> statements, String text) {
+        String sql = text.trim();
+        if (SqlLexer.classify(sql) != StatementKind.EMPTY) {
+            statements.add(sql);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package database;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Generated block SQL keyed by its shape. The same shape always produces the
+// same text, which is what lets the driver's prepared statement cache (and
+// MySQL's server-side statements) be reused across requests. Identifiers
+// are validated and quoted once, when a template is first built.
+@Component
+public class SqlTemplateCache {
+
+    private static final int MAX_TEMPLATES = 1024;
+
+    public record Key(String type, String table, List<String> columns, String filterCol) {
+    }
+
+    // Access-ordered, so the least recently used template is evicted first
+    private final Map<Key, String> templates = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    public String get(Key key, Supplier<String> builder) {
+        synchronized (templates) {
+            String sql = templates.get(key);
+            if (sql != null) {
+                return sql;
+            }
+        }
+
+        checkIdentifier(key.table());
+        if (key.filterCol() != null) {
+            checkIdentifier(key.filterCol());
+        }
+        String sql = builder.get();
+
+        synchronized (templates) {
+            templates.put(key, sql);
+        }
+        return sql;
+    }
+
+    // Anything MySQL accepts as a quoted identifier: 1 to 64 characters from
+    // the Basic Multilingual Plane, no NUL and no trailing space. Spaces,
+    // hyphens, non-ASCII letters and backticks are all fine once quoted.
+    public static void checkIdentifier(String name) {
+        if (name == null || name.isEmpty() || name.length() > 64 || name.endsWith(" ")
+                || name.chars().anyMatch(c -> c == 0 || Character.isSurrogate((char) c))) {
+            throw new IllegalArgumentException("Invalid identifier: " + name);
+        }
+    }
+
+    // Backtick-quoted, with embedded backticks doubled
+    public static String quote(String name) {
+        checkIdentifier(name);
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
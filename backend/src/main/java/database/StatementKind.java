@@ -0,0 +1,26 @@
+package database;
+
+// The CLI in src/database compiles a copy of this file; change both together.
+public enum StatementKind {
+    EMPTY,
+    SELECT,
+    SHOW,
+    DESCRIBE,
+    EXPLAIN,
+    USE,
+    CREATE_DATABASE,
+    DROP_DATABASE,
+    DDL,
+    DML,
+    OTHER;
+
+    // Statements whose results come back as rows rather than an update count
+    public boolean returnsRows() {
+        return this == SELECT || this == SHOW || this == DESCRIBE || this == EXPLAIN;
+    }
+
+    // Statements that may change the tables or columns of a database
+    public boolean changesSchema() {
+        return this == DDL || this == CREATE_DATABASE || this == DROP_DATABASE;
+    }
+}
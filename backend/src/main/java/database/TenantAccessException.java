@@ -0,0 +1,21 @@
+package database;
+
+import org.springframework.http.HttpStatus;
+
+// Raised when a request has no valid session, or names a database the
+// session does not own.
+public class TenantAccessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpStatus status;
+
+    public TenantAccessException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
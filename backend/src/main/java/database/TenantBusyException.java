@@ -0,0 +1,11 @@
+package database;
+
+// Raised when a tenant already has as many statements running as it may.
+public class TenantBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TenantBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package database;
+
+// Tenant database bound to the current request thread. TenantRoutingDataSource
+// reads it on connection checkout, so it must be set before entering a
+// @Transactional service method.
+public final class TenantContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static void set(String dbName) {
+        CURRENT.set(dbName);
+    }
+
+    public static String get() {
+        return CURRENT.get();
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,122 @@
+package database;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps a pool of empty, ready-made tenant databases so registration never
+// waits on CREATE DATABASE. Pooled databases are user_databases rows with no
+// username; a user is assigned one by a single UPDATE that claims the oldest
+// free row, which InnoDB's row locks make safe under concurrent registrations.
+@Component
+public class TenantDbProvisioner {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantDbProvisioner.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.tenant-pool.size:10}")
+    private int targetSize;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tenant-db-provisioner");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean refillQueued = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Placeholders left by a provisioning run that died before CREATE DATABASE finished
+        jdbcTemplate.update("DELETE FROM user_databases WHERE username IS NULL AND db_name IS NULL");
+        refillAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public String assign(String username) {
+        int claimed = jdbcTemplate.update(
+                "UPDATE user_databases SET username = ? " +
+                        "WHERE username IS NULL AND db_name IS NOT NULL ORDER BY id LIMIT 1",
+                username);
+        refillAsync();
+
+        if (claimed == 0) {
+            // Pool ran dry: build one for this user directly
+            return provision(username);
+        }
+        return jdbcTemplate.queryForObject("SELECT db_name FROM user_databases WHERE username = ?",
+                String.class, username);
+    }
+
+    public void refillAsync() {
+        if (refillQueued.compareAndSet(false, true)) {
+            executor.execute(this::refill);
+        }
+    }
+
+    private void refill() {
+        refillQueued.set(false);
+        try {
+            Integer ready = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM user_databases WHERE username IS NULL AND db_name IS NOT NULL",
+                    Integer.class);
+            for (int i = ready == null ? 0 : ready; i < targetSize; i++) {
+                provision(null);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not top up the tenant database pool", e);
+        }
+    }
+
+    // Reserves a row first so its AUTO_INCREMENT id names the database; the
+    // name only becomes visible (and claimable) once the database exists
+    private String provision(String username) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO user_databases (username, db_name) VALUES (?, NULL)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, username);
+            return ps;
+        }, keys);
+        long id = keys.getKey().longValue();
+        String dbName = "user_db_" + id;
+
+        // A reserved row left without a database would keep its user from
+        // ever being assigned one, so any failure takes the row back out
+        boolean created = false;
+        try {
+            // No IF NOT EXISTS: never hand out a database that already has an owner
+            jdbcTemplate.execute("CREATE DATABASE `" + dbName + "`");
+            created = true;
+            jdbcTemplate.update("UPDATE user_databases SET db_name = ? WHERE id = ?", dbName, id);
+        } catch (DataAccessException e) {
+            if (created) {
+                jdbcTemplate.execute("DROP DATABASE IF EXISTS `" + dbName + "`");
+            }
+            jdbcTemplate.update("DELETE FROM user_databases WHERE id = ?", id);
+            throw e;
+        }
+        return dbName;
+    }
+}
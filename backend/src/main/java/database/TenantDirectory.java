@@ -0,0 +1,87 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory session tokens and username -> dbName mapping, filled at login.
+// The SQL endpoints resolve their tenant here instead of trusting the dbName
+// in the request, without touching the database.
+@Component
+public class TenantDirectory {
+
+    public static final String TOKEN_HEADER = "X-Session-Token";
+
+    private static final class Session {
+        final String username;
+        final String dbName;
+        volatile long expiresAt;
+
+        Session(String username, String dbName, long expiresAt) {
+            this.username = username;
+            this.dbName = dbName;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, String> databases = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final long ttlMillis;
+
+    public TenantDirectory(@Value("${app.session.ttl:12h}") Duration ttl) {
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    public String openSession(String username, String dbName) {
+        databases.put(username, dbName);
+
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long now = System.currentTimeMillis();
+        sessions.put(token, new Session(username, dbName, now + ttlMillis));
+
+        // Sweep expired sessions now and then rather than on every login
+        if (opened.incrementAndGet() % 256 == 0) {
+            sessions.values().removeIf(s -> s.expiresAt < now);
+        }
+        return token;
+    }
+
+    public void closeSession(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public String getDatabase(String username) {
+        return databases.get(username);
+    }
+
+    // Returns the session's database. A request may still name its dbName,
+    // but only if it is the session's own.
+    public String resolve(String token, String requestedDbName) {
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (session == null || session.expiresAt < now) {
+            throw new TenantAccessException(HttpStatus.UNAUTHORIZED, "Not logged in");
+        }
+        if (requestedDbName != null && !requestedDbName.equals(session.dbName)) {
+            throw new TenantAccessException(HttpStatus.FORBIDDEN, "Not allowed to access database " + requestedDbName);
+        }
+
+        // Sliding expiry
+        session.expiresAt = now + ttlMillis;
+        return session.dbName;
+    }
+}
@@ -0,0 +1,181 @@
+package database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+// Per-tenant guard rails so one runaway query cannot starve everyone else:
+// a cap on statements running at once for a database, a statement timeout,
+// and a row and byte cap on results we hold in memory.
+@Component
+public class TenantLimits {
+
+    private static final long QUEUED_POLL_MS = 200;
+
+    private final int maxConcurrent;
+    private final long admissionWaitMs;
+    private final int statementTimeoutSeconds;
+    private final int maxRows;
+    private final long maxBytes;
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    public TenantLimits(@Value("${app.tenant.max-concurrent:3}") int maxConcurrent,
+            @Value("${app.tenant.admission-wait:2s}") Duration admissionWait,
+            @Value("${app.tenant.statement-timeout:30s}") Duration statementTimeout,
+            @Value("${app.tenant.max-rows:10000}") int maxRows,
+            @Value("${app.tenant.max-bytes:16777216}") long maxBytes) {
+        this.maxConcurrent = maxConcurrent;
+        this.admissionWaitMs = admissionWait.toMillis();
+        this.statementTimeoutSeconds = (int) statementTimeout.toSeconds();
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Waits briefly for one of the tenant's slots, then gives up with a
+    // TenantBusyException rather than queueing behind its own slow queries.
+    public Permit admit(String dbName) {
+        Tenant tenant = tenant(dbName);
+        boolean acquired;
+        try {
+            acquired = tenant.slots.tryAcquire(admissionWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            tenant.rejected.increment();
+            throw new TenantBusyException("Too many statements running for " + dbName
+                    + " (limit " + maxConcurrent + "), try again shortly");
+        }
+        tenant.admitted.increment();
+        return tenant.slots::release;
+    }
+
+    // For queued work (async jobs): waits as long as it takes for a slot
+    // instead of failing fast, checking between waits whether the job was
+    // cancelled. An interrupt ends the wait too.
+    public Permit admitQueued(String dbName, BooleanSupplier cancelled) throws InterruptedException {
+        Tenant tenant = tenant(dbName);
+        while (!tenant.slots.tryAcquire(QUEUED_POLL_MS, TimeUnit.MILLISECONDS)) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Cancelled while waiting for a slot on " + dbName);
+            }
+        }
+        tenant.admitted.increment();
+        return tenant.slots::release;
+    }
+
+    // Called for every statement the JdbcTemplate prepares. Only tenant work is
+    // limited; control-catalog queries (auth, provisioning) run as before.
+    // One row past the cap is fetched so cap() can tell it was reached.
+    public void apply(Statement stmt) throws SQLException {
+        if (TenantContext.get() == null) {
+            return;
+        }
+        if (statementTimeoutSeconds > 0
+                && (stmt.getQueryTimeout() == 0 || stmt.getQueryTimeout() > statementTimeoutSeconds)) {
+            stmt.setQueryTimeout(statementTimeoutSeconds);
+        }
+        if (maxRows > 0) {
+            stmt.setMaxRows(maxRows + 1);
+        }
+    }
+
+    // Cuts a result at the row or byte cap, whichever comes first
+    public List<Map<String, Object>> cap(String dbName, List<Map<String, Object>> rows) {
+        int keep = rows.size();
+        String limit = null;
+        if (maxRows > 0 && keep > maxRows) {
+            keep = maxRows;
+            limit = "max-rows";
+        }
+        if (maxBytes > 0) {
+            long bytes = 0;
+            for (int i = 0; i < keep; i++) {
+                bytes += ResultSizes.estimate(rows.get(i));
+                if (bytes > maxBytes) {
+                    keep = i;
+                    limit = "max-bytes";
+                    break;
+                }
+            }
+        }
+        if (limit == null) {
+            return rows;
+        }
+        tenant(dbName).truncated.increment();
+        return new CappedRows(rows.subList(0, keep), limit);
+    }
+
+    public void recordTimeout(String dbName) {
+        tenant(dbName).timedOut.increment();
+    }
+
+    public int getStatementTimeoutSeconds() {
+        return statementTimeoutSeconds;
+    }
+
+    public static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof QueryTimeoutException || t instanceof SQLTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Object> stats(String dbName) {
+        Tenant tenant = tenant(dbName);
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("maxConcurrent", maxConcurrent);
+        limits.put("statementTimeoutSeconds", statementTimeoutSeconds);
+        limits.put("maxRows", maxRows);
+        limits.put("maxBytes", maxBytes);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dbName", dbName);
+        stats.put("limits", limits);
+        stats.put("running", maxConcurrent - tenant.slots.availablePermits());
+        stats.put("admitted", tenant.admitted.sum());
+        stats.put("rejected", tenant.rejected.sum());
+        stats.put("timedOut", tenant.timedOut.sum());
+        stats.put("truncated", tenant.truncated.sum());
+        return stats;
+    }
+
+    private Tenant tenant(String dbName) {
+        return tenants.computeIfAbsent(dbName, k -> new Tenant(maxConcurrent));
+    }
+
+    private static final class Tenant {
+        final Semaphore slots;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+        final LongAdder truncated = new LongAdder();
+
+        Tenant(int maxConcurrent) {
+            this.slots = new Semaphore(maxConcurrent);
+        }
+    }
+}
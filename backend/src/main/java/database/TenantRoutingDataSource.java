@@ -0,0 +1,123 @@
+package database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class TenantRoutingDataSource extends DelegatingDataSource {
+
+    // Implemented by the connections handed out here, reachable through
+    // Connection.unwrap from behind the other pool and template proxies
+    public interface SessionState {
+        void markDirty();
+    }
+
+    private final String controlCatalog;
+
+    public TenantRoutingDataSource(DataSource targetDataSource, String controlCatalog) {
+        super(targetDataSource);
+        this.controlCatalog = controlCatalog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return bind(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return bind(super.getConnection(username, password));
+    }
+
+    // Raw SQL that can leave session state behind (a USE, variables,
+    // temporary tables, an open transaction) marks its connection, and a
+    // marked connection is dropped from the pool on close instead of going
+    // back to it, so the next borrower never inherits that state.
+    public static void markDirty(Connection con) throws SQLException {
+        if (con.isWrapperFor(SessionState.class)) {
+            con.unwrap(SessionState.class).markDirty();
+        }
+    }
+
+    // Every checkout is pointed at the request's tenant, or back at the control
+    // database when there is none. Connector/J answers getCatalog() from its
+    // own record of the last catalog it set, so the USE round trip is only
+    // paid when the connection last served another database. That record can
+    // only go stale through a raw USE, and those connections are marked dirty
+    // and never come back to the pool.
+    private Connection bind(Connection con) throws SQLException {
+        String dbName = TenantContext.get();
+        String catalog = (dbName != null && !dbName.isEmpty()) ? dbName : controlCatalog;
+        try {
+            if (catalog != null && !catalog.equals(con.getCatalog())) {
+                con.setCatalog(catalog);
+            }
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+        return tracking(con);
+    }
+
+    private Connection tracking(Connection target) {
+        boolean[] dirty = new boolean[1];
+        SessionState state = () -> dirty[0] = true;
+        return (Connection) Proxy.newProxyInstance(TenantRoutingDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class, SessionState.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "markDirty":
+                            state.markDirty();
+                            return null;
+                        case "isWrapperFor":
+                            if (args[0] == SessionState.class) {
+                                return true;
+                            }
+                            break;
+                        case "unwrap":
+                            if (args[0] == SessionState.class) {
+                                return proxy;
+                            }
+                            break;
+                        case "close":
+                            if (dirty[0] && method.getParameterCount() == 0) {
+                                discard(target);
+                                return null;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    // Hikari closes an evicted connection for good and opens a fresh one in
+    // its place; with any other pool the catalog at least goes back to the
+    // control database before the connection is returned.
+    private void discard(Connection con) throws SQLException {
+        if (con.isClosed()) {
+            return;
+        }
+        if (getTargetDataSource() instanceof HikariDataSource hikari) {
+            hikari.evictConnection(con);
+            return;
+        }
+        try {
+            if (controlCatalog != null) {
+                con.setCatalog(controlCatalog);
+            }
+        } finally {
+            con.close();
+        }
+    }
+}
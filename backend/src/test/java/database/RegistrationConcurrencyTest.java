@@ -0,0 +1,178 @@
+package database;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Registers users through /api/register against an embedded MariaDB
+// (MariaDB4j), so the pool claim and the pool-dry path run on a real InnoDB.
+// The pool is kept smaller than the number of sign-ups to exercise both.
+class RegistrationConcurrencyTest {
+
+    private static final int USERS = 120;
+    private static final int POOL_SIZE = 20;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static DB db;
+    private static ConfigurableApplicationContext app;
+    private static JdbcTemplate control;
+    private static HttpClient http;
+    private static String base;
+
+    @BeforeAll
+    static void start() throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        // mariadbd refuses to start as root unless told to (containers, CI)
+        if ("root".equals(System.getProperty("user.name"))) {
+            config.addArg("--user=root");
+        }
+        db = DB.newEmbeddedDB(config.build());
+        db.start();
+        String url = "jdbc:mysql://localhost:" + db.getConfiguration().getPort() + "/new_project"
+                + "?createDatabaseIfNotExist=true&useSSL=false&allowPublicKeyRetrieval=true";
+
+        app = new SpringApplicationBuilder(Main.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=root",
+                "--spring.datasource.password=",
+                "--app.tenant-pool.size=" + POOL_SIZE,
+                "--app.slow-query.file=",
+                "--logging.level.root=WARN");
+        control = new JdbcTemplate(new DriverManagerDataSource(url, "root", ""));
+        http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        base = "http://localhost:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        if (app != null) {
+            app.close();
+        }
+        if (db != null) {
+            db.stop();
+        }
+    }
+
+    @Test
+    void parallelRegistrationsGetDistinctDatabases() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(USERS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<HttpResponse<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            String username = "parallel_" + i;
+            futures.add(pool.submit(() -> {
+                go.await();
+                return register(username);
+            }));
+        }
+        go.countDown();
+
+        Set<String> databases = new HashSet<>();
+        for (Future<HttpResponse<String>> future : futures) {
+            HttpResponse<String> response = future.get();
+            assertEquals(200, response.statusCode(), response.body());
+            databases.add((String) JSON.readValue(response.body(), Map.class).get("dbName"));
+        }
+        pool.shutdown();
+
+        assertEquals(USERS, databases.size(), "every user gets a database of its own");
+        assertEquals(USERS, count("SELECT COUNT(*) FROM user_databases WHERE username LIKE 'parallel\\_%'"));
+        assertEquals(0, count("SELECT COUNT(*) FROM (SELECT db_name FROM user_databases "
+                + "WHERE db_name IS NOT NULL GROUP BY db_name HAVING COUNT(*) > 1) t"));
+        assertEquals(0, count("SELECT COUNT(*) FROM user_databases WHERE username IS NOT NULL AND db_name IS NULL"));
+        for (String dbName : databases) {
+            assertEquals(1, count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = '" + dbName + "'"));
+        }
+    }
+
+    @Test
+    void failedAssignmentLeavesNothingBehind() throws Exception {
+        // Take every pooled database, and occupy the names the next ones
+        // would get, so both the claim and CREATE DATABASE fail
+        awaitPoolFull();
+        control.update("UPDATE user_databases SET username = CONCAT('taken_', id) "
+                + "WHERE username IS NULL AND db_name IS NOT NULL");
+        long next = control.queryForObject("SELECT AUTO_INCREMENT FROM INFORMATION_SCHEMA.TABLES "
+                + "WHERE TABLE_SCHEMA = 'new_project' AND TABLE_NAME = 'user_databases'", Long.class);
+        List<String> blockers = new ArrayList<>();
+        for (long id = next; id < next + 50; id++) {
+            blockers.add("user_db_" + id);
+            control.execute("CREATE DATABASE IF NOT EXISTS `user_db_" + id + "`");
+        }
+
+        try {
+            HttpResponse<String> failed = register("unlucky");
+            assertNotEquals(200, failed.statusCode(), failed.body());
+            assertEquals(0, count("SELECT COUNT(*) FROM login_credentials WHERE username = 'unlucky'"));
+            assertEquals(0, count("SELECT COUNT(*) FROM user_databases WHERE username = 'unlucky'"));
+        } finally {
+            for (String blocker : blockers) {
+                control.execute("DROP DATABASE IF EXISTS `" + blocker + "`");
+            }
+        }
+
+        HttpResponse<String> retried = register("unlucky");
+        assertEquals(200, retried.statusCode(), retried.body());
+        String dbName = (String) JSON.readValue(retried.body(), Map.class).get("dbName");
+        assertTrue(dbName != null && dbName.startsWith("user_db_"), retried.body());
+        assertEquals(1, count("SELECT COUNT(*) FROM user_databases WHERE username = 'unlucky' AND db_name = '" + dbName + "'"));
+    }
+
+    private static HttpResponse<String> register(String username) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/register"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        JSON.writeValueAsString(Map.of("username", username, "password", "secret"))))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // The provisioner tops the pool up in the background after every claim
+    private static void awaitPoolFull() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (count("SELECT COUNT(*) FROM user_databases WHERE username IS NULL AND db_name IS NOT NULL") < POOL_SIZE
+                || count("SELECT COUNT(*) FROM user_databases WHERE db_name IS NULL") > 0) {
+            assertTrue(System.nanoTime() < deadline, "tenant database pool was not refilled");
+            Thread.sleep(100);
+        }
+    }
+
+    private static int count(String sql) {
+        Integer count = control.queryForObject(sql, Integer.class);
+        return count == null ? 0 : count;
+    }
+}
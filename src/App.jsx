@@ -625,7 +625,7 @@ function SignUpScreen({ onSignUp, theme, onSwitchToLogin }) {
 
 function App() {
   const [isAuthenticated, setIsAuthenticated] = useState(false);
-  const [user, setUser] = useState(null); // {username, dbName}
+  const [user, setUser] = useState(null); // {username, dbName, token}
   const [isSignUpMode, setIsSignUpMode] = useState(false);
   const [isMenuOpen, setIsMenuOpen] = useState(false);
   const [theme, setTheme] = useState('dark');
@@ -673,7 +673,9 @@ function App() {
     if (!user?.dbName) return;
     setSchemaLoading(true);
     try {
-      const response = await fetch(`http://localhost:8080/api/schema?dbName=${user.dbName}`);
+      const response = await fetch(`http://localhost:8080/api/schema?dbName=${user.dbName}`, {
+        headers: { 'X-Session-Token': user.token }
+      });
       if (response.ok) {
         const schema = await response.json();
         setDatabaseSchema(schema);
@@ -692,6 +694,15 @@ function App() {
     }
   }, [user?.dbName]);
 
+  // The server pushes a "schema" event whenever DDL changes this database;
+  // the refetch is a cheap 304 when nothing changed
+  useEffect(() => {
+    if (!user?.token) return;
+    const events = new EventSource(`http://localhost:8080/api/schema/events?token=${encodeURIComponent(user.token)}`);
+    events.addEventListener('schema', () => fetchSchema());
+    return () => events.close();
+  }, [user?.token]);
+
   const colors = THEMES[theme];
 
   const toggleTheme = () => {
@@ -712,7 +723,7 @@ function App() {
 
       const response = await fetch('http://localhost:8080/api/sql/raw', {
         method: 'POST',
-        headers: { 'Content-Type': 'application/json' },
+        headers: { 'Content-Type': 'application/json', 'X-Session-Token': user?.token },
         body: JSON.stringify({ sql: queryToExecute, dbName: user?.dbName || 'new_project' })
       });
 
@@ -730,8 +741,6 @@ function App() {
         console.error('Query failed:', json.error);
         setResults([{ Error: json.error || 'Query failed' }]);
       }
-      // Refresh schema after query (might have created/modified tables)
-      fetchSchema();
     } catch (error) {
       console.error(error);
       setResults([{ Error: 'Network Error' }]);
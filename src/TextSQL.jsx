@@ -25,6 +25,7 @@ export default function TextSQL({ theme, colors, onSwitchMode, activeMode, onTog
         { role: 'ai', content: 'Welcome to SQL Thinking Lab! I can help you write queries, explain concepts, and optimize your SQL.' }
     ]);
     const menuRef = useRef(null);
+    const queryIdRef = useRef(null);
     const chatEndRef = useRef(null);
 
     useEffect(() => {
@@ -128,12 +129,15 @@ export default function TextSQL({ theme, colors, onSwitchMode, activeMode, onTog
 
         setGeneratedSQL(sql);
         setIsLoading(true);
+        // Sent with the query so the Stop button can cancel it while we wait
+        const queryId = crypto.randomUUID();
+        queryIdRef.current = queryId;
         // setChatHistory(prev => [...prev, { role: 'ai', content: `Executing: ${sql}` }]);
 
         try {
             const response = await fetch('http://localhost:8080/api/sql/raw', {
                 method: 'POST',
-                headers: { 'Content-Type': 'application/json' },
+                headers: { 'Content-Type': 'application/json', 'X-Session-Token': user?.token, 'X-Query-Id': queryId },
                 body: JSON.stringify({ sql: sql, dbName: user?.dbName || 'new_project' })
             });
 
@@ -156,10 +160,24 @@ export default function TextSQL({ theme, colors, onSwitchMode, activeMode, onTog
             setResults([{ Error: 'Network Error - Backend may not be running' }]);
             // setChatHistory(prev => [...prev, { role: 'ai', content: '❌ Network Error - Make sure the backend server is running on port 8080.' }]);
         } finally {
+            queryIdRef.current = null;
             setIsLoading(false);
         }
     };
 
+    const handleStopQuery = async () => {
+        const queryId = queryIdRef.current;
+        if (!queryId) return;
+        try {
+            await fetch(`http://localhost:8080/api/sql/cancel/${queryId}`, {
+                method: 'POST',
+                headers: { 'X-Session-Token': user?.token }
+            });
+        } catch (error) {
+            console.error(error);
+        }
+    };
+
     const handleSendMessage = () => {
         if (!chatInput.trim()) return;
         setChatHistory(prev => [
@@ -534,6 +552,14 @@ export default function TextSQL({ theme, colors, onSwitchMode, activeMode, onTog
                                     )}
                                     Run Query
                                 </button>
+                                {isLoading && (
+                                    <button
+                                        onClick={handleStopQuery}
+                                        className="px-3 py-2 bg-red-500 hover:bg-red-600 text-white rounded-lg font-semibold transition-all active:scale-95 hover:scale-110 hover:shadow-lg"
+                                    >
+                                        Stop
+                                    </button>
+                                )}
                                 <button
                                     onClick={handleClear}
                                     className="px-3 py-2 rounded-lg transition-all active:scale-95 hover:opacity-80 hover:scale-110 hover:shadow-md"